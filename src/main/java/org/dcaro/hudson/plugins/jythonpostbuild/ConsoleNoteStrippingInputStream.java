@@ -0,0 +1,255 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2014, David Caro
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.dcaro.hudson.plugins.jythonpostbuild;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Removes the console notes (hyperlinks and other annotations Jenkins
+ * encodes in the build log) from a stream of bytes, before it is decoded, so
+ * that patterns match the text shown on the console page.
+ *
+ * A note is <code>ESC[8mha:</code>, followed by the base64 encoded note,
+ * followed by <code>ESC[0m</code>. Both markers are ASCII, so they can be
+ * found in the raw bytes of any ASCII compatible charset. Notes never span
+ * lines, so a note that isn't terminated on its line is kept as plain text,
+ * like Jenkins does, both by this stream and by {@link #removeNotes(byte[], int)}.
+ */
+public class ConsoleNoteStrippingInputStream extends FilterInputStream {
+    static final byte[] PREAMBLE = {0x1B, '[', '8', 'm', 'h', 'a', ':'};
+    static final byte[] POSTAMBLE = {0x1B, '[', '0', 'm'};
+
+    private final byte[] raw = new byte[8192];
+    private byte[] cooked = new byte[raw.length + PREAMBLE.length];
+    private int cookedPos;
+    private int cookedEnd;
+    /** Number of bytes of {@link #PREAMBLE} matched and not yet returned. */
+    private int preambleMatched;
+    /** Number of bytes of {@link #POSTAMBLE} matched, while in a note. */
+    private int postambleMatched = -1;
+    /** The bytes of the current note, from its preamble, until it is known to be terminated. */
+    private byte[] note = new byte[256];
+    private int noteLength;
+
+    public ConsoleNoteStrippingInputStream(InputStream in) {
+        super(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+        while (cookedPos == cookedEnd) {
+            if (!fill()) {
+                return -1;
+            }
+        }
+        return cooked[cookedPos++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        while (cookedPos == cookedEnd) {
+            if (!fill()) {
+                return -1;
+            }
+        }
+        int n = Math.min(len, cookedEnd - cookedPos);
+        System.arraycopy(cooked, cookedPos, b, off, n);
+        cookedPos += n;
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = 0;
+        while (skipped < n && read() >= 0) {
+            skipped++;
+        }
+        return skipped;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return cookedEnd - cookedPos;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public synchronized void mark(int readlimit) {
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        throw new IOException("mark/reset not supported");
+    }
+
+    /**
+     * Reads and strips the next chunk of the underlying stream.
+     *
+     * @return false at the end of the stream
+     */
+    private boolean fill() throws IOException {
+        int n = in.read(raw, 0, raw.length);
+        cookedPos = 0;
+        cookedEnd = 0;
+        if (n < 0) {
+            if (postambleMatched >= 0) {
+                // an unterminated note at the end of the stream is plain text
+                emit(note, noteLength);
+                noteLength = 0;
+                postambleMatched = -1;
+                return true;
+            }
+            // so is a truncated preamble
+            if (preambleMatched > 0) {
+                emit(PREAMBLE, preambleMatched);
+                preambleMatched = 0;
+                return true;
+            }
+            return false;
+        }
+        for (int i = 0; i < n; i++) {
+            byte c = raw[i];
+            if (postambleMatched >= 0) {
+                if (c == '\n') {
+                    // an unterminated note is plain text, don't let it swallow the log
+                    emit(note, noteLength);
+                    noteLength = 0;
+                    postambleMatched = -1;
+                    cooked[cookedEnd++] = c;
+                    continue;
+                }
+                appendToNote(c);
+                // inside a note, ESC only appears at the start of the postamble
+                if (c == POSTAMBLE[postambleMatched]) {
+                    if (++postambleMatched == POSTAMBLE.length) {
+                        noteLength = 0;
+                        postambleMatched = -1;
+                    }
+                } else {
+                    postambleMatched = (c == POSTAMBLE[0]) ? 1 : 0;
+                }
+                continue;
+            }
+            if (c == PREAMBLE[preambleMatched]) {
+                if (++preambleMatched == PREAMBLE.length) {
+                    preambleMatched = 0;
+                    postambleMatched = 0;
+                    for (byte p : PREAMBLE) {
+                        appendToNote(p);
+                    }
+                }
+                continue;
+            }
+            if (preambleMatched > 0) {
+                // not a note after all, ESC only appears at the start of the preamble
+                emit(PREAMBLE, preambleMatched);
+                preambleMatched = 0;
+                if (c == PREAMBLE[0]) {
+                    preambleMatched = 1;
+                    continue;
+                }
+            }
+            cooked[cookedEnd++] = c;
+        }
+        return true;
+    }
+
+    private void appendToNote(byte c) {
+        if (noteLength == note.length) {
+            note = Arrays.copyOf(note, note.length * 2);
+        }
+        note[noteLength++] = c;
+    }
+
+    private void emit(byte[] b, int len) {
+        if (cookedEnd + len > cooked.length) {
+            // leave room for the rest of the chunk
+            cooked = Arrays.copyOf(cooked, cookedEnd + len + raw.length + PREAMBLE.length);
+        }
+        System.arraycopy(b, 0, cooked, cookedEnd, len);
+        cookedEnd += len;
+    }
+
+    /**
+     * Removes the console notes from a single line, in place.
+     *
+     * @param b
+     *            the bytes of the line
+     * @param len
+     *            the number of bytes of the line
+     * @return the number of bytes of the line without its notes
+     */
+    public static int removeNotes(byte[] b, int len) {
+        int start = indexOf(b, len, 0);
+        if (start < 0) {
+            return len;
+        }
+        int w = start;
+        int r = start;
+        while (start >= 0) {
+            System.arraycopy(b, r, b, w, start - r);
+            w += start - r;
+            int end = indexOf(b, len, start + PREAMBLE.length, POSTAMBLE);
+            if (end < 0) {
+                // unterminated note, kept as plain text
+                System.arraycopy(b, start, b, w, len - start);
+                return w + len - start;
+            }
+            r = end + POSTAMBLE.length;
+            start = indexOf(b, len, r);
+        }
+        System.arraycopy(b, r, b, w, len - r);
+        return w + len - r;
+    }
+
+    private static int indexOf(byte[] b, int len, int from) {
+        return indexOf(b, len, from, PREAMBLE);
+    }
+
+    private static int indexOf(byte[] b, int len, int from, byte[] marker) {
+        outer:
+        for (int i = from; i <= len - marker.length; i++) {
+            if (b[i] != 0x1B) {
+                continue;
+            }
+            for (int j = 1; j < marker.length; j++) {
+                if (b[i + j] != marker[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+}
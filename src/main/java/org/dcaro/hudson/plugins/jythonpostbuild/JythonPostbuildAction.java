@@ -26,14 +26,20 @@ package org.dcaro.hudson.plugins.jythonpostbuild;
 import hudson.PluginWrapper;
 import hudson.model.BuildBadgeAction;
 import hudson.model.Hudson;
+import hudson.model.Run;
+import jenkins.model.RunAction2;
 
 import java.io.File;
 
+import org.apache.commons.lang.StringEscapeUtils;
 import org.kohsuke.stapler.export.Exported;
 import org.kohsuke.stapler.export.ExportedBean;
 
+/**
+ * A badge of a build, also listed in its {@link JythonPostbuildBadgeIndex}.
+ */
 @ExportedBean(defaultVisibility=2)
-public class JythonPostbuildAction implements BuildBadgeAction {
+public class JythonPostbuildAction implements BuildBadgeAction, RunAction2 {
     private final String iconPath;
     private final String text;
     private String color = "#000000";
@@ -41,6 +47,8 @@ public class JythonPostbuildAction implements BuildBadgeAction {
     private String border = "1px";
     private String borderColor = "#C0C000";
     private String link;
+    private transient String renderedRootURL;
+    private transient String renderedHtml;
 
     private JythonPostbuildAction(String iconPath, String text) {
         this.iconPath = iconPath;
@@ -87,6 +95,10 @@ public class JythonPostbuildAction implements BuildBadgeAction {
     public String getDisplayName() { return ""; }
     public String getIconFileName() { return null; }
 
+    /* RunAction2 methods, for badges added to the build with addAction() */
+    public void onAttached(Run<?, ?> r) { JythonPostbuildBadgeIndex.attached(r, this); }
+    public void onLoad(Run<?, ?> r) { }
+
     @Exported public boolean isTextOnly() { return (iconPath == null); }
     @Exported public String getIconPath() { return iconPath; }
     @Exported public String getText() { return text; }
@@ -96,6 +108,53 @@ public class JythonPostbuildAction implements BuildBadgeAction {
     @Exported public String getBorderColor() { return borderColor; }
     @Exported public String getLink() { return link; }
 
+    /**
+     * Returns the HTML fragment displaying this badge, with all the values escaped.
+     * Badges never change once created, so the fragment is rendered only once.
+     *
+     * @param rootURL
+     *            the root URL of Jenkins, prepended to the icon path
+     * @return the HTML fragment of this badge
+     */
+    public synchronized String getHtml(String rootURL) {
+        if (renderedHtml == null || !rootURL.equals(renderedRootURL)) {
+            renderedHtml = renderHtml(rootURL);
+            renderedRootURL = rootURL;
+        }
+        return renderedHtml;
+    }
+
+    private String renderHtml(String rootURL) {
+        String escapedText = escape(text);
+        StringBuilder html = new StringBuilder();
+        if (iconPath == null) {
+            html.append("<span style=\"padding:1px;border:").append(escape(border))
+                .append(" solid ").append(escape(borderColor))
+                .append(";margin:0px;background:").append(escape(background))
+                .append(";color:").append(escape(color)).append("\">")
+                .append(escapedText).append("</span>");
+            return html.toString();
+        }
+        if (link != null) {
+            html.append("<a href=\"").append(escape(link)).append("\">");
+        }
+        html.append("<img src=\"").append(escape(rootURL + iconPath))
+            .append("\" width=\"16\" height=\"16\" alt=\"").append(escapedText)
+            .append("\" title=\"").append(escapedText).append("\"");
+        if (link == null) {
+            html.append(" onclick=\"javascript:alert('").append(escape(StringEscapeUtils.escapeJavaScript(text))).append("')\"");
+        }
+        html.append(" />");
+        if (link != null) {
+            html.append("</a>");
+        }
+        return html.toString();
+    }
+
+    private static String escape(String value) {
+        return (value == null) ? "" : StringEscapeUtils.escapeHtml(value);
+    }
+
     public static String getIconPath(String icon) {
         if(icon == null) return null;
         if(icon.startsWith("/")) return icon;
@@ -0,0 +1,153 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2014, David Caro
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.dcaro.hudson.plugins.jythonpostbuild;
+
+import hudson.model.Action;
+import hudson.model.Run;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Index of the {@link JythonPostbuildAction} badges and {@link JythonPostbuildSummaryAction}
+ * summaries of a build, in the order they were added, so that they are looked
+ * up and removed by index without filtering all the actions of the build.
+ *
+ * The badges and summaries stay actions of the build, so that
+ * <code>getAction(Class)</code>, the views and the remote API keep finding them.
+ * The index is only kept in memory: it is built from the actions of the build
+ * the first time it is used, and it goes away with the build object.
+ */
+public final class JythonPostbuildBadgeIndex {
+    /** Guards {@link #INDEXES}; the monitor of the build belongs to Jenkins core. */
+    private static final Object LOCK = new Object();
+    private static final Map<Run<?, ?>, JythonPostbuildBadgeIndex> INDEXES = new WeakHashMap<Run<?, ?>, JythonPostbuildBadgeIndex>();
+
+    /** Not a strong reference, as the build is the key of {@link #INDEXES}. */
+    private final WeakReference<Run<?, ?>> run;
+    private final List<JythonPostbuildAction> badges;
+    private final List<JythonPostbuildSummaryAction> summaries;
+
+    private JythonPostbuildBadgeIndex(Run<?, ?> run) {
+        this.run = new WeakReference<Run<?, ?>>(run);
+        this.badges = new ArrayList<JythonPostbuildAction>(run.getActions(JythonPostbuildAction.class));
+        this.summaries = new ArrayList<JythonPostbuildSummaryAction>(run.getActions(JythonPostbuildSummaryAction.class));
+    }
+
+    /**
+     * @return the index of the given build, built from its actions if needed
+     */
+    public static JythonPostbuildBadgeIndex get(Run<?, ?> run) {
+        synchronized (LOCK) {
+            JythonPostbuildBadgeIndex index = INDEXES.get(run);
+            if (index == null) {
+                index = new JythonPostbuildBadgeIndex(run);
+                INDEXES.put(run, index);
+            }
+            return index;
+        }
+    }
+
+    /**
+     * Adds to the index of a build, if it is already built, a badge or summary
+     * added to the build with <code>addAction()</code> by other code.
+     */
+    static void attached(Run<?, ?> run, Action action) {
+        JythonPostbuildBadgeIndex index;
+        synchronized (LOCK) {
+            index = INDEXES.get(run);
+        }
+        if (index != null) {
+            index.add(action);
+        }
+    }
+
+    private synchronized void add(Action action) {
+        if (action instanceof JythonPostbuildAction && !badges.contains(action)) {
+            badges.add((JythonPostbuildAction) action);
+        } else if (action instanceof JythonPostbuildSummaryAction && !summaries.contains(action)) {
+            summaries.add((JythonPostbuildSummaryAction) action);
+        }
+    }
+
+    private List<Action> actions() {
+        Run<?, ?> r = run.get();
+        // the callers hold the build while they use its index
+        return (r != null) ? r.getActions() : new ArrayList<Action>();
+    }
+
+    public synchronized List<JythonPostbuildAction> getBadges() {
+        return Collections.unmodifiableList(new ArrayList<JythonPostbuildAction>(badges));
+    }
+
+    public synchronized List<JythonPostbuildSummaryAction> getSummaries() {
+        return Collections.unmodifiableList(new ArrayList<JythonPostbuildSummaryAction>(summaries));
+    }
+
+    public synchronized void addBadge(JythonPostbuildAction badge) {
+        badges.add(badge);
+        actions().add(badge);
+    }
+
+    /**
+     * @return false if there is no badge at this index
+     */
+    public synchronized boolean removeBadge(int index) {
+        if (index < 0 || index >= badges.size()) {
+            return false;
+        }
+        actions().remove(badges.remove(index));
+        return true;
+    }
+
+    public synchronized void removeBadges() {
+        actions().removeAll(badges);
+        badges.clear();
+    }
+
+    public synchronized void addSummary(JythonPostbuildSummaryAction summary) {
+        summaries.add(summary);
+        actions().add(summary);
+    }
+
+    /**
+     * @return false if there is no summary at this index
+     */
+    public synchronized boolean removeSummary(int index) {
+        if (index < 0 || index >= summaries.size()) {
+            return false;
+        }
+        actions().remove(summaries.remove(index));
+        return true;
+    }
+
+    public synchronized void removeSummaries() {
+        actions().removeAll(summaries);
+        summaries.clear();
+    }
+}
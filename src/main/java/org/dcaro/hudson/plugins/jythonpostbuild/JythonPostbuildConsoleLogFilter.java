@@ -0,0 +1,158 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2014, David Caro
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.dcaro.hudson.plugins.jythonpostbuild;
+
+import hudson.Extension;
+import hudson.console.ConsoleLogFilter;
+import hudson.console.LineTransformationOutputStream;
+import hudson.matrix.MatrixBuild;
+import hudson.model.AbstractBuild;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Scans the build log while it is written, for the builds of the projects
+ * having a {@link JythonPostbuildRecorder} with
+ * {@link JythonPostbuildRecorder#isScanLogDuringBuild()} enabled.
+ *
+ * The first matching line of the rule patterns and of the extra live patterns
+ * is stored in a {@link JythonPostbuildLogMatches} action, and the badge and
+ * short text rules are applied as soon as they match.
+ */
+@Extension
+public class JythonPostbuildConsoleLogFilter extends ConsoleLogFilter {
+    private static final Logger LOGGER = Logger.getLogger(JythonPostbuildConsoleLogFilter.class.getName());
+
+    @SuppressWarnings("rawtypes")
+    @Override
+    public OutputStream decorateLogger(AbstractBuild build, OutputStream logger) throws IOException, InterruptedException {
+        JythonPostbuildRecorder recorder = build.getProject().getPublishersList().get(JythonPostbuildRecorder.class);
+        if (recorder == null || !recorder.isScanLogDuringBuild()) {
+            return logger;
+        }
+        if (build instanceof MatrixBuild && !recorder.isRunForMatrixParent()) {
+            return logger;
+        }
+
+        Set<String> regexps = new LinkedHashSet<String>();
+        for (JythonPostbuildRule rule : recorder.getRules()) {
+            regexps.add(rule.getPattern());
+        }
+        regexps.addAll(recorder.getLivePatternList());
+        List<String> scanned = new ArrayList<String>();
+        List<Pattern> patterns = new ArrayList<Pattern>();
+        for (String regexp : regexps) {
+            try {
+                patterns.add(Pattern.compile(regexp));
+                scanned.add(regexp);
+            } catch (PatternSyntaxException e) {
+                LOGGER.log(Level.WARNING, "Not scanning the log of " + build + " for invalid pattern '" + regexp + "'", e);
+            }
+        }
+        if (patterns.isEmpty()) {
+            return logger;
+        }
+
+        JythonPostbuildLogMatches matches = new JythonPostbuildLogMatches(scanned);
+        build.addAction(matches);
+        return new ScanningOutputStream(logger, build, recorder.getRules(), scanned, patterns, matches);
+    }
+
+    private static class ScanningOutputStream extends LineTransformationOutputStream {
+        private final OutputStream out;
+        private final AbstractBuild<?, ?> build;
+        private final List<JythonPostbuildRule> rules;
+        private final List<String> regexps;
+        private final Pattern[] patterns;
+        private final JythonPostbuildLogMatches matches;
+        private final Charset charset;
+        private int remaining;
+
+        ScanningOutputStream(OutputStream out, AbstractBuild<?, ?> build, List<JythonPostbuildRule> rules,
+                List<String> regexps, List<Pattern> patterns, JythonPostbuildLogMatches matches) {
+            this.out = out;
+            this.build = build;
+            this.rules = new ArrayList<JythonPostbuildRule>(rules);
+            this.regexps = regexps;
+            this.patterns = patterns.toArray(new Pattern[patterns.size()]);
+            this.matches = matches;
+            this.charset = build.getCharset();
+            this.remaining = this.patterns.length;
+        }
+
+        /**
+         * Writes the line and then scans it. The notes are removed in place,
+         * which is fine as the buffer is not used again once written.
+         */
+        @Override
+        protected void eol(byte[] b, int len) throws IOException {
+            out.write(b, 0, len);
+            if (remaining == 0) {
+                return;
+            }
+            String line = trimEOL(new String(b, 0, ConsoleNoteStrippingInputStream.removeNotes(b, len), charset));
+            for (int i = 0; i < patterns.length; i++) {
+                String regexp = regexps.get(i);
+                if (matches.isMatched(regexp)) {
+                    continue;
+                }
+                Matcher matcher = patterns[i].matcher(line);
+                if (matcher.matches() && matches.record(regexp, line)) {
+                    remaining--;
+                    applyEarly(regexp, matcher);
+                }
+            }
+        }
+
+        private void applyEarly(String regexp, Matcher matcher) {
+            for (JythonPostbuildRule rule : rules) {
+                if (regexp.equals(rule.getPattern()) && rule.isBadge() && matches.markRuleApplied(rule)) {
+                    JythonPostbuildBadgeIndex.get(build).addBadge(rule.createBadge(matcher));
+                }
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            super.close();
+            out.close();
+        }
+    }
+}
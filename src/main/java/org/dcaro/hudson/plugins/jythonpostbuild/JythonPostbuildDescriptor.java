@@ -24,6 +24,8 @@
 package org.dcaro.hudson.plugins.jythonpostbuild;
 
 
+import net.sf.json.JSONObject;
+
 import org.kohsuke.stapler.StaplerRequest;
 
 import hudson.Extension;
@@ -31,15 +33,23 @@ import hudson.matrix.MatrixProject;
 import hudson.model.AbstractProject;
 import hudson.tasks.BuildStepDescriptor;
 import hudson.tasks.Publisher;
+import hudson.util.ListBoxModel;
 
 @Extension
 public class JythonPostbuildDescriptor extends BuildStepDescriptor<Publisher> {
+    private int maxRunning;
+    private int workerCount = 2;
+    private int workerHeapMB = 256;
+    private int workerMaxExecutions = 100;
+    private int workerMaxHeapGrowthMB = 64;
+    private int workerTimeoutSeconds = 600;
 
     /**
      * Constructs a {@link JythonPostbuildDescriptor}.
      */
     public JythonPostbuildDescriptor() {
         super(JythonPostbuildRecorder.class);
+        load();
     }
 
     /**
@@ -56,6 +66,87 @@ public class JythonPostbuildDescriptor extends BuildStepDescriptor<Publisher> {
         return super.getHelpFile();
     }
 
+    @Override
+    public boolean configure(StaplerRequest req, JSONObject json) throws FormException {
+        req.bindJSON(this, json);
+        save();
+        return true;
+    }
+
+    /**
+     * @return the maximum number of recorders running at the same time, over all the builds, 0 for no limit
+     */
+    public int getMaxRunning() {
+        return maxRunning;
+    }
+
+    public void setMaxRunning(int maxRunning) {
+        this.maxRunning = maxRunning;
+    }
+
+    public ListBoxModel doFillPriorityItems() {
+        ListBoxModel items = new ListBoxModel();
+        items.add("Normal", "NORMAL");
+        items.add("High", "HIGH");
+        items.add("Low", "LOW");
+        return items;
+    }
+
+    /**
+     * @return the maximum number of worker JVMs running scripts at the same time
+     */
+    public int getWorkerCount() {
+        return workerCount;
+    }
+
+    public void setWorkerCount(int workerCount) {
+        this.workerCount = workerCount;
+    }
+
+    /**
+     * @return the maximum heap of each worker JVM, in MB
+     */
+    public int getWorkerHeapMB() {
+        return workerHeapMB;
+    }
+
+    public void setWorkerHeapMB(int workerHeapMB) {
+        this.workerHeapMB = workerHeapMB;
+    }
+
+    /**
+     * @return the number of scripts after which a worker JVM is replaced, 0 for never
+     */
+    public int getWorkerMaxExecutions() {
+        return workerMaxExecutions;
+    }
+
+    public void setWorkerMaxExecutions(int workerMaxExecutions) {
+        this.workerMaxExecutions = workerMaxExecutions;
+    }
+
+    /**
+     * @return the heap growth since its first script after which a worker JVM is replaced, in MB, 0 for never
+     */
+    public int getWorkerMaxHeapGrowthMB() {
+        return workerMaxHeapGrowthMB;
+    }
+
+    public void setWorkerMaxHeapGrowthMB(int workerMaxHeapGrowthMB) {
+        this.workerMaxHeapGrowthMB = workerMaxHeapGrowthMB;
+    }
+
+    /**
+     * @return the time after which a script run in a worker JVM is stopped, with its worker, in seconds, 0 for never
+     */
+    public int getWorkerTimeoutSeconds() {
+        return workerTimeoutSeconds;
+    }
+
+    public void setWorkerTimeoutSeconds(int workerTimeoutSeconds) {
+        this.workerTimeoutSeconds = workerTimeoutSeconds;
+    }
+
     /**
      * Checks whether this descriptor is applicable.
      * @param clazz
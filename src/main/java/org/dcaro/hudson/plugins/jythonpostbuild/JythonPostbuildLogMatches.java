@@ -0,0 +1,99 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2014, David Caro
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.dcaro.hudson.plugins.jythonpostbuild;
+
+import hudson.model.InvisibleAction;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Patterns matched against the build log while it is written, by
+ * {@link JythonPostbuildConsoleLogFilter}. Lets {@link JythonPostbuildRecorder.BadgeManager}
+ * answer log searches from memory instead of reading the log again.
+ *
+ * The matches are only kept in memory, so the log lines aren't copied to <code>build.xml</code>:
+ * once the build is reloaded no pattern is scanned anymore, and searches read the log again.
+ */
+public class JythonPostbuildLogMatches extends InvisibleAction {
+    private final transient Set<String> patterns;
+    /** First matching line of each pattern that matched. */
+    private final transient ConcurrentMap<String, String> hits = new ConcurrentHashMap<String, String>();
+    /** Keys of the rules already applied while the build was running. */
+    private final transient Set<String> appliedRules = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    public JythonPostbuildLogMatches(Collection<String> patterns) {
+        this.patterns = Collections.unmodifiableSet(new HashSet<String>(patterns));
+    }
+
+    private Object readResolve() {
+        return new JythonPostbuildLogMatches(Collections.<String>emptySet());
+    }
+
+    /**
+     * @return true if the given pattern is scanned, so {@link #getMatcher(String)} is authoritative
+     */
+    public boolean isScanned(String regexp) {
+        return patterns.contains(regexp);
+    }
+
+    public boolean isMatched(String regexp) {
+        return hits.containsKey(regexp);
+    }
+
+    /**
+     * Records the first line matching a pattern.
+     *
+     * @return true if this is the first match of the pattern
+     */
+    boolean record(String regexp, String line) {
+        return hits.putIfAbsent(regexp, line) == null;
+    }
+
+    /**
+     * @return a matcher for the first line matching the given scanned pattern, or null if none matched
+     */
+    public Matcher getMatcher(String regexp) {
+        String line = hits.get(regexp);
+        if (line == null) {
+            return null;
+        }
+        Matcher matcher = Pattern.compile(regexp).matcher(line);
+        return matcher.matches() ? matcher : null;
+    }
+
+    boolean markRuleApplied(JythonPostbuildRule rule) {
+        return appliedRules.add(rule.getKey());
+    }
+
+    public boolean isRuleApplied(JythonPostbuildRule rule) {
+        return appliedRules.contains(rule.getKey());
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2014, David Caro
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.dcaro.hudson.plugins.jythonpostbuild;
+
+import hudson.Extension;
+import hudson.matrix.MatrixBuild;
+import hudson.matrix.MatrixRun;
+import hudson.model.InvisibleAction;
+import hudson.model.TaskListener;
+import hudson.model.listeners.RunListener;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Key/value results published by the scripts of the children of a matrix
+ * build, with <code>manager.publish(key, value)</code>, for the script of the
+ * matrix parent.
+ *
+ * The results are kept in memory from the start of the parent build until it
+ * completes, so that the parent script doesn't have to load its children. They
+ * are also saved with each child, as a {@link Published} action, which is only
+ * read once the parent build is over.
+ */
+public final class JythonPostbuildMatrixResults {
+    /** Results by parent build, then by combination of the child. */
+    private static final ConcurrentMap<String, ConcurrentMap<String, Map<String, String>>> RESULTS =
+            new ConcurrentHashMap<String, ConcurrentMap<String, Map<String, String>>>();
+    /** Guards the creation of the {@link Published} actions; the monitor of the build belongs to Jenkins core. */
+    private static final Object LOCK = new Object();
+
+    private JythonPostbuildMatrixResults() {
+    }
+
+    /**
+     * The results published by the script of a matrix child.
+     */
+    public static class Published extends InvisibleAction {
+        private final Map<String, String> values = new ConcurrentHashMap<String, String>();
+
+        public Map<String, String> getValues() {
+            return Collections.unmodifiableMap(values);
+        }
+    }
+
+    private static String id(MatrixBuild parent) {
+        return parent.getParent().getFullName() + "#" + parent.getNumber();
+    }
+
+    /**
+     * Publishes a result of a matrix child.
+     *
+     * @param key
+     *            not null
+     * @param value
+     *            not null
+     * @return false if the parent build is already over
+     */
+    static boolean publish(MatrixRun run, String key, String value) {
+        MatrixBuild parent = run.getParentBuild();
+        // only update the entry created when the parent started: once the parent is over,
+        // a late child must not create an entry that nothing would remove
+        ConcurrentMap<String, Map<String, String>> children = (parent != null) ? RESULTS.get(id(parent)) : null;
+        if (children == null) {
+            return false;
+        }
+        Published published;
+        synchronized (LOCK) {
+            published = run.getAction(Published.class);
+            if (published == null) {
+                published = new Published();
+                run.getActions().add(published);
+            }
+        }
+        published.values.put(key, value);
+
+        children.put(run.getParent().getCombination().toString(), published.values);
+        return true;
+    }
+
+    /**
+     * @return the results published by the children of a matrix build, by combination
+     *         (e.g. <code>axis1=value1,axis2=value2</code>), then by key
+     */
+    static Map<String, Map<String, String>> getResults(MatrixBuild parent) {
+        Map<String, Map<String, String>> results = new TreeMap<String, Map<String, String>>();
+        ConcurrentMap<String, Map<String, String>> children = RESULTS.get(id(parent));
+        if (children == null && parent.isBuilding()) {
+            // the entry is created when the parent starts, never load the children of a running parent
+            return results;
+        }
+        if (children != null) {
+            for (Map.Entry<String, Map<String, String>> child : children.entrySet()) {
+                results.put(child.getKey(), Collections.unmodifiableMap(new HashMap<String, String>(child.getValue())));
+            }
+            return results;
+        }
+        // not in memory anymore, as the parent build is over
+        for (MatrixRun run : parent.getExactRuns()) {
+            Published published = run.getAction(Published.class);
+            if (published != null) {
+                results.put(run.getParent().getCombination().toString(), published.getValues());
+            }
+        }
+        return results;
+    }
+
+    static void clear(MatrixBuild parent) {
+        RESULTS.remove(id(parent));
+    }
+
+    /**
+     * Keeps the results of a matrix build in memory while it runs.
+     */
+    @Extension
+    public static class Cleaner extends RunListener<MatrixBuild> {
+        public Cleaner() {
+            super(MatrixBuild.class);
+        }
+
+        @Override
+        public void onStarted(MatrixBuild r, TaskListener listener) {
+            RESULTS.putIfAbsent(id(r), new ConcurrentHashMap<String, Map<String, String>>());
+        }
+
+        @Override
+        public void onCompleted(MatrixBuild r, TaskListener listener) {
+            clear(r);
+        }
+
+        @Override
+        public void onDeleted(MatrixBuild r) {
+            clear(r);
+        }
+    }
+}
@@ -24,17 +24,137 @@
 package org.dcaro.hudson.plugins.jythonpostbuild;
 
 import java.io.IOException;
-import java.util.List;
+import java.util.Iterator;
+import java.util.SortedMap;
+
+import javax.servlet.http.HttpServletResponse;
+
+import net.sf.json.JSONArray;
+import net.sf.json.JSONNull;
+import net.sf.json.JSONObject;
 
 import org.kohsuke.stapler.StaplerRequest;
 import org.kohsuke.stapler.StaplerResponse;
 
 import hudson.Plugin;
 import hudson.model.Action;
+import hudson.model.Item;
 import hudson.model.Job;
 import hudson.model.Run;
+import jenkins.model.Jenkins;
 
 public class JythonPostbuildPlugin extends Plugin {
+    /** Default number of builds returned by {@link #doBadges}. */
+    static final int DEFAULT_BADGES_LIMIT = 20;
+    /** Maximum number of builds returned by {@link #doBadges}. */
+    static final int MAX_BADGES_LIMIT = 100;
+
+    @Override
+    public void start() throws Exception {
+        JythonWorkerPool.get().start();
+    }
+
+    @Override
+    public void stop() throws Exception {
+        JythonWorkerPool.get().shutdown();
+    }
+
+    /**
+     * Returns the badges of a page of builds of a job as JSON, newest build first.
+     *
+     * Parameters: <code>job</code> (full name of the job), <code>before</code>
+     * (only builds with a lower number, defaults to all) and <code>limit</code>
+     * (number of builds, from 1 to 100, defaults to 20). The returned <code>next</code> value is
+     * the <code>before</code> of the following page, or null on the last page.
+     * Builds are read through the build map of the job, so only the builds of the page are loaded,
+     * and builds the user isn't allowed to read are skipped.
+     */
+    @SuppressWarnings("unchecked")
+    public void doBadges(StaplerRequest req, StaplerResponse rsp) throws IOException {
+        String jobName = req.getParameter("job");
+        Job job = (jobName == null) ? null : Jenkins.getInstance().getItemByFullName(jobName, Job.class);
+        if (job == null) {
+            rsp.sendError(HttpServletResponse.SC_NOT_FOUND, "No such job: " + jobName);
+            return;
+        }
+        job.checkPermission(Item.READ);
+        Integer limit = parseInt(req.getParameter("limit"), DEFAULT_BADGES_LIMIT, 1);
+        Integer before = parseInt(req.getParameter("before"), Integer.MAX_VALUE, 1);
+        if (limit == null || before == null) {
+            rsp.sendError(HttpServletResponse.SC_BAD_REQUEST, "limit and before must be positive numbers");
+            return;
+        }
+        limit = Math.min(limit, MAX_BADGES_LIMIT);
+        // newest first
+        SortedMap<Integer, Run> runs = job.getBuildsAsMap();
+        if (req.getParameter("before") != null) {
+            runs = runs.tailMap(before - 1);
+        }
+
+        String rootURL = req.getContextPath();
+        JSONArray builds = new JSONArray();
+        Iterator<Run> it = runs.values().iterator();
+        Run last = null;
+        while (builds.size() < limit && it.hasNext()) {
+            Run run = it.next();
+            if (!run.hasPermission(Item.READ)) {
+                continue;
+            }
+            last = run;
+            JSONArray badges = new JSONArray();
+            for (JythonPostbuildAction badge : run.getActions(JythonPostbuildAction.class)) {
+                JSONObject json = new JSONObject();
+                json.put("text", badge.getText());
+                json.put("iconPath", badge.getIconPath());
+                json.put("link", badge.getLink());
+                json.put("html", badge.getHtml(rootURL));
+                badges.add(json);
+            }
+            JSONObject build = new JSONObject();
+            build.put("number", run.getNumber());
+            build.put("badges", badges);
+            builds.add(build);
+        }
+
+        JSONObject result = new JSONObject();
+        result.put("job", job.getFullName());
+        result.put("builds", builds);
+        result.put("next", (last != null && it.hasNext()) ? Integer.valueOf(last.getNumber()) : JSONNull.getInstance());
+        rsp.setContentType("application/json;charset=UTF-8");
+        result.write(rsp.getWriter());
+    }
+
+    /**
+     * Returns the metrics of the {@link JythonPostbuildScheduler} as JSON.
+     */
+    public void doSchedulerStats(StaplerRequest req, StaplerResponse rsp) throws IOException {
+        Jenkins.getInstance().checkPermission(Jenkins.ADMINISTER);
+        JythonPostbuildScheduler scheduler = JythonPostbuildScheduler.get();
+        JSONObject result = new JSONObject();
+        result.put("running", scheduler.getRunning());
+        result.put("queued", scheduler.getQueued());
+        result.put("admitted", scheduler.getAdmitted());
+        result.put("totalWaitMillis", scheduler.getTotalWaitMillis());
+        result.put("maxWaitMillis", scheduler.getMaxWaitMillis());
+        rsp.setContentType("application/json;charset=UTF-8");
+        result.write(rsp.getWriter());
+    }
+
+    /**
+     * @return the value, the default value if it is missing, or null if it isn't
+     *         a number or is lower than min
+     */
+    private static Integer parseInt(String value, int defaultValue, int min) {
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            int i = Integer.parseInt(value);
+            return (i >= min) ? Integer.valueOf(i) : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
 
     public void doRemoveBadges(StaplerRequest req, StaplerResponse rsp) throws IOException {
         removeActions(JythonPostbuildAction.class, req, rsp);
@@ -44,15 +164,15 @@ public class JythonPostbuildPlugin extends Plugin {
         removeActions(JythonPostbuildSummaryAction.class, req, rsp);
     }
 
-    @SuppressWarnings("unchecked")
-    private void removeActions(Class type, StaplerRequest req, StaplerResponse rsp) throws IOException {
+    private void removeActions(Class<? extends Action> type, StaplerRequest req, StaplerResponse rsp) throws IOException {
         req.findAncestorObject(Job.class).checkPermission(Run.UPDATE);
-        Run run = req.findAncestorObject(Run.class);
+        Run<?, ?> run = req.findAncestorObject(Run.class);
         if (run != null) {
-            List<Action> actions = run.getActions();
-            List<Action> jythonActions = run.getActions(type);
-            for(Action action : jythonActions) {
-                actions.remove(action);
+            JythonPostbuildBadgeIndex index = JythonPostbuildBadgeIndex.get(run);
+            if (type == JythonPostbuildAction.class) {
+                index.removeBadges();
+            } else {
+                index.removeSummaries();
             }
             run.save();
             rsp.sendRedirect(req.getRequestURI().substring(0, req.getRequestURI().indexOf("parent/parent")));
@@ -67,8 +187,7 @@ public class JythonPostbuildPlugin extends Plugin {
         removeAction(JythonPostbuildSummaryAction.class, req, rsp);
     }
 
-    @SuppressWarnings("unchecked")
-    private void removeAction(Class type, StaplerRequest req, StaplerResponse rsp) throws IOException {
+    private void removeAction(Class<? extends Action> type, StaplerRequest req, StaplerResponse rsp) throws IOException {
         String index = req.getParameter("index");
         if(index == null) {
             throw new IOException("Missing parameter 'index'.");
@@ -80,14 +199,13 @@ public class JythonPostbuildPlugin extends Plugin {
             throw new IOException("Invalid index: " + index);
         }
         req.findAncestorObject(Job.class).checkPermission(Run.UPDATE);
-        Run run = req.findAncestorObject(Run.class);
+        Run<?, ?> run = req.findAncestorObject(Run.class);
         if (run != null) {
-            List<Action> actions = run.getActions();
-            List<Action> jythonActions = run.getActions(type);
-            if(idx < 0 || idx >= jythonActions.size()) {
+            JythonPostbuildBadgeIndex index = JythonPostbuildBadgeIndex.get(run);
+            boolean removed = (type == JythonPostbuildAction.class) ? index.removeBadge(idx) : index.removeSummary(idx);
+            if(!removed) {
                 throw new IOException("Index out of range: " + idx);
             }
-            actions.remove(jythonActions.get(idx));
             run.save();
             rsp.sendRedirect(req.getRequestURI().substring(0, req.getRequestURI().indexOf("parent/parent")));
         }
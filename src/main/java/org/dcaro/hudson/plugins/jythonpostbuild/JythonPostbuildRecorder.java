@@ -27,21 +27,26 @@ import org.python.util.PythonInterpreter;
 
 import hudson.AbortException;
 import hudson.EnvVars;
+import hudson.FilePath;
 import hudson.Launcher;
 import hudson.matrix.MatrixAggregatable;
 import hudson.matrix.MatrixAggregator;
 import hudson.matrix.MatrixBuild;
+import hudson.matrix.MatrixRun;
 import hudson.model.*;
 import hudson.tasks.BuildStepMonitor;
 import hudson.tasks.Recorder;
 import hudson.util.IOUtils;
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
 
 import java.io.*;
 import java.net.MalformedURLException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -49,6 +54,8 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
 
+import javax.xml.stream.XMLStreamException;
+
 import jenkins.model.Jenkins;
 
 /** This class associates {@link JythonPostbuildAction}s to a build. */
@@ -59,6 +66,12 @@ public class JythonPostbuildRecorder extends Recorder implements MatrixAggregata
     private String script;
     private final int behavior;
     private final boolean runForMatrixParent;
+    private List<JythonPostbuildRule> rules;
+    private boolean scanLogDuringBuild;
+    private String livePatterns;
+    private boolean runInWorker;
+    private String priority;
+    private boolean profile;
 
     public static class BadgeManager {
         private AbstractBuild<?, ?> build;
@@ -116,76 +129,97 @@ public class JythonPostbuildRecorder extends Recorder implements MatrixAggregata
             return listener;
         }
 
+        private JythonPostbuildBadgeIndex index() {
+            return JythonPostbuildBadgeIndex.get(build);
+        }
+
         public void addShortText(String text) {
-            build.getActions().add(JythonPostbuildAction.createShortText(text));
+            index().addBadge(JythonPostbuildAction.createShortText(text));
         }
 
         public void addShortText(String text, String color, String background, String border, String borderColor) {
-            build.getActions().add(JythonPostbuildAction.createShortText(text, color, background, border, borderColor));
+            index().addBadge(JythonPostbuildAction.createShortText(text, color, background, border, borderColor));
         }
 
         public void addBadge(String icon, String text) {
-            build.getActions().add(JythonPostbuildAction.createBadge(icon, text));
+            index().addBadge(JythonPostbuildAction.createBadge(icon, text));
         }
 
         public void addBadge(String icon, String text, String link) {
-            build.getActions().add(JythonPostbuildAction.createBadge(icon, text, link));
+            index().addBadge(JythonPostbuildAction.createBadge(icon, text, link));
         }
 
         public void addInfoBadge(String text) {
-            build.getActions().add(JythonPostbuildAction.createInfoBadge(text));
+            index().addBadge(JythonPostbuildAction.createInfoBadge(text));
         }
 
         public void addWarningBadge(String text) {
-            build.getActions().add(JythonPostbuildAction.createWarningBadge(text));
+            index().addBadge(JythonPostbuildAction.createWarningBadge(text));
         }
 
         public void addErrorBadge(String text) {
-            build.getActions().add(JythonPostbuildAction.createErrorBadge(text));
+            index().addBadge(JythonPostbuildAction.createErrorBadge(text));
         }
 
         public void removeBadges() {
-            List<Action> actions = build.getActions();
-            List<JythonPostbuildAction> badgeActions = build.getActions(JythonPostbuildAction.class);
-            for(JythonPostbuildAction action : badgeActions) {
-                actions.remove(action);
-            }
+            index().removeBadges();
         }
 
         public void removeBadge(int index) {
-            List<Action> actions = build.getActions();
-            List<JythonPostbuildAction> badgeActions = build.getActions(JythonPostbuildAction.class);
-            if(index < 0 || index >= badgeActions.size()) {
-                listener.error("Invalid badge index: " + index + ". Allowed values: 0 .. " + (badgeActions.size()-1));
-            } else {
-                JythonPostbuildAction action = badgeActions.get(index);
-                actions.remove(action);
+            if(!index().removeBadge(index)) {
+                listener.error("Invalid badge index: " + index + ". Allowed values: 0 .. " + (index().getBadges().size()-1));
             }
         }
 
         public JythonPostbuildSummaryAction createSummary(String icon) {
             JythonPostbuildSummaryAction action = new JythonPostbuildSummaryAction(icon);
-            build.getActions().add(action);
+            index().addSummary(action);
             return action;
         }
         public void removeSummaries() {
-            List<Action> actions = build.getActions();
-            List<JythonPostbuildSummaryAction> summaryActions = build.getActions(JythonPostbuildSummaryAction.class);
-            for(JythonPostbuildSummaryAction action : summaryActions) {
-                actions.remove(action);
-            }
+            index().removeSummaries();
         }
         public void removeSummary(int index) {
-            List<Action> actions = build.getActions();
-            List<JythonPostbuildSummaryAction> summaryActions = build.getActions(JythonPostbuildSummaryAction.class);
-            if(index < 0 || index >= summaryActions.size()) {
-                listener.error("Invalid summary index: " + index + ". Allowed values: 0 .. " + (summaryActions.size()-1));
-            } else {
-                JythonPostbuildSummaryAction action = summaryActions.get(index);
-                actions.remove(action);
+            if(!index().removeSummary(index)) {
+                listener.error("Invalid summary index: " + index + ". Allowed values: 0 .. " + (index().getSummaries().size()-1));
+            }
+        }
+
+        /**
+         * Publishes a result of a matrix child for the script of its parent,
+         * see {@link #getChildResults()}.
+         */
+        public void publish(String key, String value) {
+            if (!(build instanceof MatrixRun)) {
+                listener.error("Jython Postbuild: only the children of a matrix build can publish results.");
+            } else if (key == null || value == null) {
+                listener.error("Jython Postbuild: can't publish '" + key + "' with a null key or value.");
+            } else if (!JythonPostbuildMatrixResults.publish((MatrixRun) build, key, value)) {
+                listener.error("Jython Postbuild: the matrix parent is over, '" + key + "' can't be published.");
             }
         }
 
+        /**
+         * @return the results published by the children of this matrix build,
+         *         by combination (e.g. <code>axis1=value1,axis2=value2</code>), then by key;
+         *         empty if this isn't a matrix build
+         */
+        public Map<String, Map<String, String>> getChildResults() {
+            if (!(build instanceof MatrixBuild)) {
+                return Collections.emptyMap();
+            }
+            return JythonPostbuildMatrixResults.getResults((MatrixBuild) build);
+        }
+
+        /**
+         * @return the result published with the given key by the child with the given
+         *         combination, or null
+         */
+        public String getChildResult(String combination, String key) {
+            Map<String, String> values = getChildResults().get(combination);
+            return (values != null) ? values.get(key) : null;
+        }
+
         public void buildUnstable() {
             build.setResult(Result.UNSTABLE);
         }
@@ -209,11 +243,15 @@ public class JythonPostbuildRecorder extends Recorder implements MatrixAggregata
         public void buildScriptFailed(Exception e) {
             StringWriter writer = new StringWriter();
             e.printStackTrace(new PrintWriter(writer));
+            buildScriptFailed(writer.toString());
+        }
+
+        void buildScriptFailed(String stackTrace) {
             boolean isError = scriptFailureResult.isWorseThan(Result.UNSTABLE);
             String icon = isError ? "error" : "warning";
             JythonPostbuildSummaryAction summary = createSummary(icon + ".gif");
             summary.appendText("<b><font color=\"red\">Jython script failed:</font></b><br><pre>", false);
-            summary.appendText(writer.toString(), true);
+            summary.appendText(stackTrace, true);
             summary.appendText("</pre>", false);
 
             addShortText("Jython", "black", isError ? "#FFE0E0" : "#FFFFC0", "1px", isError ? "#E08080" : "#C0C080");
@@ -225,6 +263,10 @@ public class JythonPostbuildRecorder extends Recorder implements MatrixAggregata
         }
 
         public boolean logContains(String regexp) {
+            JythonPostbuildLogMatches matches = build.getAction(JythonPostbuildLogMatches.class);
+            if (matches != null && matches.isScanned(regexp)) {
+                return matches.isMatched(regexp);
+            }
             return contains(build.getLogFile(), regexp);
         }
 
@@ -234,6 +276,10 @@ public class JythonPostbuildRecorder extends Recorder implements MatrixAggregata
         }
 
         public Matcher getLogMatcher(String regexp) {
+            JythonPostbuildLogMatches matches = build.getAction(JythonPostbuildLogMatches.class);
+            if (matches != null && matches.isScanned(regexp)) {
+                return matches.getMatcher(regexp);
+            }
             return getMatcher(build.getLogFile(), regexp);
         }
 
@@ -243,9 +289,8 @@ public class JythonPostbuildRecorder extends Recorder implements MatrixAggregata
             BufferedReader reader = null;
             try {
                 Pattern pattern = compilePattern(regexp);
-                // Assume default encoding and text files
                 String line;
-                reader = new BufferedReader(new FileReader(f));
+                reader = openReader(f);
                 while ((line = reader.readLine()) != null) {
                     Matcher m = pattern.matcher(line);
                     if (m.matches()) {
@@ -262,6 +307,144 @@ public class JythonPostbuildRecorder extends Recorder implements MatrixAggregata
             return matcher;
         }
 
+        /**
+         * Opens a file to search it line by line. The build log is decoded
+         * with the build charset, after removing its console notes, so that
+         * patterns match the text shown on the console page.
+         */
+        private BufferedReader openReader(File f) throws IOException {
+            if (f.equals(build.getLogFile())) {
+                return new BufferedReader(new InputStreamReader(
+                        new ConsoleNoteStrippingInputStream(new FileInputStream(f)), build.getCharset()));
+            }
+            // Assume default encoding and text files
+            return new BufferedReader(new FileReader(f));
+        }
+
+        /**
+         * Stream-parses the JUnit/TestNG reports matching the given Ant-style
+         * pattern, relative to the workspace.
+         *
+         * @param includes
+         *            Ant-style pattern of the report files, e.g. <code>**&#47;TEST-*.xml</code>
+         * @return the aggregated counters, the 10 slowest and the first 100 failed test cases
+         */
+        public TestReportSummary parseTestReports(String includes) {
+            return parseTestReports(includes, 10, 100);
+        }
+
+        public TestReportSummary parseTestReports(String includes, int maxSlowest, int maxFailed) {
+            TestReportSummary summary = new TestReportSummary(maxSlowest, maxFailed);
+            FilePath workspace = build.getWorkspace();
+            if (workspace == null) {
+                listener.error("Jython Postbuild: parseTestReports(\"" + includes + "\") failed, no workspace.");
+                return summary;
+            }
+            try {
+                TestReportParser parser = new TestReportParser();
+                for (FilePath report : workspace.list(includes)) {
+                    InputStream in = report.read();
+                    try {
+                        parser.parse(in, summary);
+                    } catch (XMLStreamException e) {
+                        listener.error("Jython Postbuild: unable to parse test report '" + report.getRemote() + "': " + e.getMessage());
+                    } finally {
+                        IOUtils.closeQuietly(in);
+                    }
+                }
+            } catch (IOException e) {
+                e.printStackTrace(listener.error("Jython Postbuild: parseTestReports(\"" + includes + "\") failed."));
+                buildScriptFailed(e);
+            } catch (InterruptedException e) {
+                e.printStackTrace(listener.error("Jython Postbuild: parseTestReports(\"" + includes + "\") interrupted."));
+                buildScriptFailed(e);
+            }
+            return summary;
+        }
+
+        public TestReportSummary parseTestReport(File f) {
+            return parseTestReport(f, 10, 100);
+        }
+
+        public TestReportSummary parseTestReport(File f, int maxSlowest, int maxFailed) {
+            TestReportSummary summary = new TestReportSummary(maxSlowest, maxFailed);
+            InputStream in = null;
+            try {
+                in = new FileInputStream(f);
+                new TestReportParser().parse(in, summary);
+            } catch (IOException e) {
+                e.printStackTrace(listener.error("Jython Postbuild: parseTestReport(\"" + f + "\") failed."));
+                buildScriptFailed(e);
+            } catch (XMLStreamException e) {
+                listener.error("Jython Postbuild: unable to parse test report '" + f + "': " + e.getMessage());
+            } finally {
+                IOUtils.closeQuietly(in);
+            }
+            return summary;
+        }
+
+        /**
+         * Evaluates the given rules against the build log in a single pass.
+         * Each rule is applied at most once, for the first matching line,
+         * and rules are applied in their configured order.
+         * Patterns already scanned while the build was running are answered
+         * from memory, and the log is only read for the other ones.
+         *
+         * @param rules
+         *            the rules to evaluate
+         * @throws AbortException
+         *            if the pattern of a rule can't be compiled
+         */
+        public void applyRules(List<JythonPostbuildRule> rules) throws AbortException {
+            int count = rules.size();
+            Pattern[] patterns = new Pattern[count];
+            for (int i = 0; i < count; i++) {
+                patterns[i] = compilePattern(rules.get(i).getPattern());
+            }
+            Matcher[] matchers = new Matcher[count];
+            boolean[] scanned = new boolean[count];
+            int remaining = count;
+            JythonPostbuildLogMatches matches = build.getAction(JythonPostbuildLogMatches.class);
+            if (matches != null) {
+                for (int i = 0; i < count; i++) {
+                    String regexp = rules.get(i).getPattern();
+                    if (matches.isScanned(regexp)) {
+                        scanned[i] = true;
+                        matchers[i] = matches.getMatcher(regexp);
+                        remaining--;
+                    }
+                }
+            }
+            BufferedReader reader = null;
+            try {
+                String line;
+                if (remaining > 0) {
+                    reader = openReader(build.getLogFile());
+                }
+                while (remaining > 0 && (line = reader.readLine()) != null) {
+                    for (int i = 0; i < count; i++) {
+                        if (matchers[i] == null && !scanned[i]) {
+                            Matcher m = patterns[i].matcher(line);
+                            if (m.matches()) {
+                                matchers[i] = m;
+                                remaining--;
+                            }
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                e.printStackTrace(listener.error("Jython Postbuild: unable to apply rules to '" + build.getLogFile() + "'."));
+                buildScriptFailed(e);
+            } finally {
+                IOUtils.closeQuietly(reader);
+            }
+            for (int i = 0; i < count; i++) {
+                if (matchers[i] != null && (matches == null || !matches.isRuleApplied(rules.get(i)))) {
+                    rules.get(i).apply(this, matchers[i]);
+                }
+            }
+        }
+
         private Pattern compilePattern(String regexp) throws AbortException {
             Pattern pattern;
             try {
@@ -273,6 +456,68 @@ public class JythonPostbuildRecorder extends Recorder implements MatrixAggregata
             return pattern;
         }
 
+        /**
+         * Replays on the build the calls recorded by a script run in a worker JVM.
+         *
+         * @param response
+         *            the response of the worker
+         */
+        void applyWorkerResponse(JythonWorkerResponse response) {
+            if (response.output != null && response.output.length() > 0) {
+                listener.getLogger().print(response.output);
+            }
+            List<JythonPostbuildSummaryAction> summaries = new ArrayList<JythonPostbuildSummaryAction>();
+            for (JythonWorkerResponse.Call call : response.calls) {
+                String method = call.method;
+                int argc = call.args.length;
+                if ("println".equals(method)) {
+                    println(call.getString(0));
+                } else if ("addShortText".equals(method) && argc == 1) {
+                    addShortText(call.getString(0));
+                } else if ("addShortText".equals(method)) {
+                    addShortText(call.getString(0), call.getString(1), call.getString(2), call.getString(3), call.getString(4));
+                } else if ("addBadge".equals(method) && argc == 2) {
+                    addBadge(call.getString(0), call.getString(1));
+                } else if ("addBadge".equals(method)) {
+                    addBadge(call.getString(0), call.getString(1), call.getString(2));
+                } else if ("addInfoBadge".equals(method)) {
+                    addInfoBadge(call.getString(0));
+                } else if ("addWarningBadge".equals(method)) {
+                    addWarningBadge(call.getString(0));
+                } else if ("addErrorBadge".equals(method)) {
+                    addErrorBadge(call.getString(0));
+                } else if ("removeBadges".equals(method)) {
+                    removeBadges();
+                } else if ("removeBadge".equals(method)) {
+                    removeBadge(call.getInt(0));
+                } else if ("createSummary".equals(method)) {
+                    summaries.add(createSummary(call.getString(0)));
+                } else if ("appendText".equals(method) && argc == 3) {
+                    summaries.get(call.getInt(0)).appendText(call.getString(1), call.getBoolean(2));
+                } else if ("appendText".equals(method)) {
+                    summaries.get(call.getInt(0)).appendText(call.getString(1), call.getBoolean(2), call.getBoolean(3), call.getBoolean(4), call.getString(5));
+                } else if ("removeSummaries".equals(method)) {
+                    removeSummaries();
+                } else if ("removeSummary".equals(method)) {
+                    removeSummary(call.getInt(0));
+                } else if ("publish".equals(method)) {
+                    publish(call.getString(0), call.getString(1));
+                } else if ("buildUnstable".equals(method)) {
+                    buildUnstable();
+                } else if ("buildFailure".equals(method)) {
+                    buildFailure();
+                } else if ("buildSuccess".equals(method)) {
+                    buildSuccess();
+                } else if ("buildAborted".equals(method)) {
+                    buildAborted();
+                } else if ("buildNotBuilt".equals(method)) {
+                    buildNotBuilt();
+                } else {
+                    listener.error("Jython Postbuild: unexpected call from the Jython worker: " + call);
+                }
+            }
+        }
+
         /**
          * Test whether the current build is specified type.
          *
@@ -284,16 +529,25 @@ public class JythonPostbuildRecorder extends Recorder implements MatrixAggregata
         }
     }
 
-    @DataBoundConstructor
     public JythonPostbuildRecorder(String script, int behavior, boolean runForMatrixParent) {
+        this(script, behavior, runForMatrixParent, null);
+    }
+
+    @DataBoundConstructor
+    public JythonPostbuildRecorder(String script, int behavior, boolean runForMatrixParent, List<JythonPostbuildRule> rules) {
         this.script = script;
         this.behavior = behavior;
         this.runForMatrixParent = runForMatrixParent;
+        this.rules = (rules != null) ? new ArrayList<JythonPostbuildRule>(rules) : new ArrayList<JythonPostbuildRule>();
         LOGGER.fine("JythonPostbuildRecorder created with jythonScript:\n" + script);
         LOGGER.fine("JythonPostbuildRecorder behavior:" + behavior);
+        LOGGER.fine("JythonPostbuildRecorder rules:" + this.rules.size());
     }
 
     private Object readResolve() {
+        if (rules == null) {
+            rules = new ArrayList<JythonPostbuildRule>();
+        }
         return this;
     }
 
@@ -318,21 +572,87 @@ public class JythonPostbuildRecorder extends Recorder implements MatrixAggregata
             case 1: scriptFailureResult = Result.UNSTABLE; break;
             case 2: scriptFailureResult = Result.FAILURE; break;
         }
-        BadgeManager badgeManager = new BadgeManager(build, listener, scriptFailureResult);
-        ClassLoader cl = Jenkins.getInstance().getPluginManager().uberClassLoader;
-        //Binding binding = new Binding();
-        //binding.setVariable("manager", badgeManager);
+        int maxRunning = getDescriptor().getMaxRunning();
+        if (maxRunning <= 0) {
+            return performScripts(build, listener, scriptFailureResult);
+        }
+        JythonPostbuildScheduler scheduler = JythonPostbuildScheduler.get();
+        // the cells of a matrix build share the slots of their matrix project
+        String job = build.getProject().getRootProject().getFullName();
+        long waited = scheduler.acquire(job, JythonPostbuildScheduler.parsePriority(priority), maxRunning);
         try {
-            //script.evaluate(cl, binding);
-            PythonInterpreter.initialize(System.getProperties(), System.getProperties(), new String[0]);
-            PythonInterpreter interp = new PythonInterpreter();
-            interp.set("manager", badgeManager);
-            interp.set("self", this);
-            interp.exec(script);
-        } catch (Exception e) {
-            // TODO could print more refined errors for UnapprovedUsageException and/or RejectedAccessException:
-            e.printStackTrace(listener.error("Failed to evaluate jython script."));
-            badgeManager.buildScriptFailed(e);
+            listener.getLogger().println("Jython Postbuild: waited " + waited + " ms for one of the " + maxRunning + " script slots.");
+            LOGGER.fine("Jython Postbuild: " + build + " waited " + waited + " ms, " + scheduler.getRunning() + " running, " + scheduler.getQueued() + " queued");
+            return performScripts(build, listener, scriptFailureResult);
+        } finally {
+            scheduler.release();
+        }
+    }
+
+    private boolean performScripts(final AbstractBuild<?, ?> build, final BuildListener listener, Result scriptFailureResult) throws InterruptedException, IOException {
+        BadgeManager badgeManager = new BadgeManager(build, listener, scriptFailureResult);
+        if (!rules.isEmpty()) {
+            try {
+                badgeManager.applyRules(rules);
+            } catch (Exception e) {
+                e.printStackTrace(listener.error("Failed to evaluate jython postbuild rules."));
+                badgeManager.buildScriptFailed(e);
+            }
+        }
+        String unsupported = (hasScript() && runInWorker) ? RemoteBadgeManager.findUnsupported(script) : null;
+        if (unsupported != null) {
+            String message = "Jython Postbuild: " + unsupported + " is not available to scripts run in a separate JVM, the script was not run.";
+            listener.error(message);
+            badgeManager.buildScriptFailed(message);
+        } else if (hasScript() && runInWorker) {
+            if (profile) {
+                listener.getLogger().println("Jython Postbuild: scripts run in a worker JVM can't be profiled.");
+            }
+            JythonWorkerRequest request = new JythonWorkerRequest(script, badgeManager.getEnvVars(),
+                    build.getLogFile().getAbsolutePath(), build.getCharset().name(), build.getResult().toString());
+            if (build instanceof MatrixBuild) {
+                request.childResults.putAll(badgeManager.getChildResults());
+            }
+            try {
+                JythonWorkerResponse response = JythonWorkerPool.get().execute(request, getDescriptor());
+                badgeManager.applyWorkerResponse(response);
+                if (response.failure != null) {
+                    listener.error("Failed to evaluate jython script.");
+                    listener.getLogger().print(response.failure);
+                    badgeManager.buildScriptFailed(response.failure);
+                }
+            } catch (IOException e) {
+                e.printStackTrace(listener.error("Failed to run jython script in a worker JVM."));
+                badgeManager.buildScriptFailed(e);
+            }
+        } else if (hasScript()) {
+            ClassLoader cl = Jenkins.getInstance().getPluginManager().uberClassLoader;
+            //Binding binding = new Binding();
+            //binding.setVariable("manager", badgeManager);
+            try {
+                //script.evaluate(cl, binding);
+                PythonInterpreter.initialize(System.getProperties(), System.getProperties(), new String[0]);
+                PythonInterpreter interp = new PythonInterpreter();
+                interp.set("manager", badgeManager);
+                interp.set("self", this);
+                JythonScriptProfiler profiler = null;
+                if (profile) {
+                    profiler = new JythonScriptProfiler();
+                    profiler.start();
+                }
+                try {
+                    interp.exec(script);
+                } finally {
+                    if (profiler != null) {
+                        profiler.stop();
+                        profiler.appendReport(badgeManager.createSummary("clock.gif"), script, 10);
+                    }
+                }
+            } catch (Exception e) {
+                // TODO could print more refined errors for UnapprovedUsageException and/or RejectedAccessException:
+                e.printStackTrace(listener.error("Failed to evaluate jython script."));
+                badgeManager.buildScriptFailed(e);
+            }
         }
         for(AbstractBuild<?, ?> b : badgeManager.builds) {
             b.save();
@@ -348,10 +668,91 @@ public class JythonPostbuildRecorder extends Recorder implements MatrixAggregata
         return script;
     }
 
+    public boolean hasScript() {
+        return script != null && script.trim().length() > 0;
+    }
+
     public int getBehavior() {
         return behavior;
     }
 
+    public List<JythonPostbuildRule> getRules() {
+        return rules;
+    }
+
+    public boolean isScanLogDuringBuild() {
+        return scanLogDuringBuild;
+    }
+
+    @DataBoundSetter
+    public void setScanLogDuringBuild(boolean scanLogDuringBuild) {
+        this.scanLogDuringBuild = scanLogDuringBuild;
+    }
+
+    public String getLivePatterns() {
+        return livePatterns;
+    }
+
+    /**
+     * @param livePatterns
+     *            regular expressions scanned while the build runs, besides the rule patterns, one per line
+     */
+    @DataBoundSetter
+    public void setLivePatterns(String livePatterns) {
+        this.livePatterns = livePatterns;
+    }
+
+    public boolean isRunInWorker() {
+        return runInWorker;
+    }
+
+    /**
+     * @param runInWorker
+     *            whether the script is run in a separate JVM of the {@link JythonWorkerPool}
+     */
+    @DataBoundSetter
+    public void setRunInWorker(boolean runInWorker) {
+        this.runInWorker = runInWorker;
+    }
+
+    public String getPriority() {
+        return priority;
+    }
+
+    /**
+     * @param priority
+     *            HIGH, NORMAL or LOW, the priority of this recorder when the number of recorders running at the same time is limited
+     */
+    @DataBoundSetter
+    public void setPriority(String priority) {
+        this.priority = priority;
+    }
+
+    public boolean isProfile() {
+        return profile;
+    }
+
+    /**
+     * @param profile
+     *            whether the script is run under {@link JythonScriptProfiler}, which adds its hot spots to the build summary
+     */
+    @DataBoundSetter
+    public void setProfile(boolean profile) {
+        this.profile = profile;
+    }
+
+    public List<String> getLivePatternList() {
+        List<String> list = new ArrayList<String>();
+        if (livePatterns != null) {
+            for (String pattern : livePatterns.split("\\r?\\n")) {
+                if (pattern.length() > 0) {
+                    list.add(pattern);
+                }
+            }
+        }
+        return list;
+    }
+
     public boolean isRunForMatrixParent() {
         return runForMatrixParent;
     }
@@ -0,0 +1,199 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2014, David Caro
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.dcaro.hudson.plugins.jythonpostbuild;
+
+import hudson.Extension;
+import hudson.model.AbstractDescribableImpl;
+import hudson.model.Descriptor;
+import hudson.model.Result;
+import hudson.util.FormValidation;
+import hudson.util.ListBoxModel;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.QueryParameter;
+
+/**
+ * A declarative "if a log line matches, then do this" rule, evaluated
+ * natively by {@link JythonPostbuildRecorder} without starting the Jython
+ * interpreter.
+ */
+public class JythonPostbuildRule extends AbstractDescribableImpl<JythonPostbuildRule> {
+    public static final String BADGE = "badge";
+    public static final String SHORT_TEXT = "shortText";
+    public static final String SUMMARY = "summary";
+    public static final String RESULT = "result";
+
+    /** The results a rule can set; the result of a build can only get worse. */
+    private static final Result[] RESULTS = {Result.UNSTABLE, Result.FAILURE, Result.NOT_BUILT, Result.ABORTED};
+
+    private static final Pattern GROUP_REFERENCE = Pattern.compile("\\$(\\d)");
+
+    private final String pattern;
+    private final String kind;
+    private final String icon;
+    private final String text;
+    private final String result;
+
+    @DataBoundConstructor
+    public JythonPostbuildRule(String pattern, String kind, String icon, String text, String result) {
+        this.pattern = pattern;
+        this.kind = kind;
+        this.icon = icon;
+        this.text = text;
+        this.result = result;
+    }
+
+    public String getPattern() { return pattern; }
+    public String getKind() { return kind; }
+    public String getIcon() { return icon; }
+    public String getText() { return text; }
+    public String getResult() { return result; }
+
+    /**
+     * Applies this rule for a line that matched its pattern.
+     *
+     * @param manager
+     *            the badge manager of the build
+     * @param matcher
+     *            the matcher of the matching line, used to expand <code>$1</code>..<code>$9</code> in the text
+     */
+    void apply(JythonPostbuildRecorder.BadgeManager manager, Matcher matcher) {
+        if (isBadge()) {
+            JythonPostbuildBadgeIndex.get(manager.getBuild()).addBadge(createBadge(matcher));
+        } else if (SUMMARY.equals(kind)) {
+            manager.createSummary(isEmpty(icon) ? "info.gif" : icon).appendText(expand(matcher), true);
+        } else if (RESULT.equals(kind)) {
+            Result r = parseResult(result);
+            if (r == null) {
+                manager.getListener().error("Jython Postbuild: invalid result '" + result + "' in the rule for '" + pattern + "'.");
+            } else {
+                manager.getBuild().setResult(r);
+            }
+        }
+    }
+
+    /**
+     * @return true if this rule only adds a badge or a short text, so it can be
+     *         applied while the build is still running
+     */
+    public boolean isBadge() {
+        return BADGE.equals(kind) || SHORT_TEXT.equals(kind);
+    }
+
+    /**
+     * @return the key of this rule in {@link JythonPostbuildLogMatches}, which doesn't depend on
+     *         the position of the rule, as the rules can be reconfigured while a build is running
+     */
+    String getKey() {
+        return pattern + '\n' + kind + '\n' + icon + '\n' + text;
+    }
+
+    JythonPostbuildAction createBadge(Matcher matcher) {
+        if (SHORT_TEXT.equals(kind)) {
+            return JythonPostbuildAction.createShortText(expand(matcher));
+        }
+        return JythonPostbuildAction.createBadge(isEmpty(icon) ? "info.gif" : icon, expand(matcher));
+    }
+
+    String expand(Matcher matcher) {
+        if (text == null) {
+            return "";
+        }
+        StringBuffer buffer = new StringBuffer();
+        Matcher reference = GROUP_REFERENCE.matcher(text);
+        while (reference.find()) {
+            int group = Integer.parseInt(reference.group(1));
+            String value = (group <= matcher.groupCount()) ? matcher.group(group) : null;
+            reference.appendReplacement(buffer, Matcher.quoteReplacement(value == null ? "" : value));
+        }
+        reference.appendTail(buffer);
+        return buffer.toString();
+    }
+
+    /**
+     * Unlike {@link Result#fromString(String)}, doesn't turn an unknown value into FAILURE.
+     *
+     * @return the result with the given name, or null
+     */
+    static Result parseResult(String value) {
+        for (Result r : RESULTS) {
+            if (r.toString().equals(value)) {
+                return r;
+            }
+        }
+        return null;
+    }
+
+    private static boolean isEmpty(String s) {
+        return s == null || s.trim().length() == 0;
+    }
+
+    @Extension
+    public static class DescriptorImpl extends Descriptor<JythonPostbuildRule> {
+        @Override
+        public String getDisplayName() {
+            return "Rule";
+        }
+
+        public ListBoxModel doFillKindItems() {
+            ListBoxModel items = new ListBoxModel();
+            items.add("Add badge", BADGE);
+            items.add("Add short text", SHORT_TEXT);
+            items.add("Add summary line", SUMMARY);
+            items.add("Change build result", RESULT);
+            return items;
+        }
+
+        public ListBoxModel doFillResultItems() {
+            ListBoxModel items = new ListBoxModel();
+            for (Result r : RESULTS) {
+                items.add(r.toString());
+            }
+            return items;
+        }
+
+        public FormValidation doCheckResult(@QueryParameter String kind, @QueryParameter String value) {
+            if (RESULT.equals(kind) && parseResult(value) == null) {
+                return FormValidation.error("The result must be one of UNSTABLE, FAILURE, NOT_BUILT or ABORTED.");
+            }
+            return FormValidation.ok();
+        }
+
+        public FormValidation doCheckPattern(@QueryParameter String value) {
+            if (isEmpty(value)) {
+                return FormValidation.error("The pattern is mandatory.");
+            }
+            try {
+                Pattern.compile(value);
+                return FormValidation.ok();
+            } catch (PatternSyntaxException e) {
+                return FormValidation.error("Invalid regular expression: " + e.getDescription());
+            }
+        }
+    }
+}
@@ -0,0 +1,241 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2014, David Caro
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.dcaro.hudson.plugins.jythonpostbuild;
+
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Limits the number of {@link JythonPostbuildRecorder}s running at the same
+ * time over all the builds.
+ *
+ * Waiting recorders are admitted by priority class, then round-robin across
+ * jobs, then in arrival order, so that a job queuing many recorders at once
+ * (e.g. the cells of a large matrix build) doesn't delay the other jobs of the
+ * same class behind all of them. To avoid starving the low priorities, a
+ * waiting recorder is promoted one class up for each {@link #AGING_MILLIS} it
+ * has waited.
+ */
+final class JythonPostbuildScheduler {
+    public static final int HIGH = 0;
+    public static final int NORMAL = 1;
+    public static final int LOW = 2;
+
+    static final long AGING_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    private static final JythonPostbuildScheduler INSTANCE = new JythonPostbuildScheduler();
+
+    private final long agingMillis;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private final LinkedList<Waiter> waiting = new LinkedList<Waiter>();
+    /** Admission sequence number of the last recorder admitted, by job with waiting recorders. */
+    private final Map<String, Long> lastAdmitted = new HashMap<String, Long>();
+    private int running;
+    private long admitted;
+    private long totalWaitMillis;
+    private long maxWaitMillis;
+
+    private class Waiter {
+        final String job;
+        final int priority;
+        final long since = System.currentTimeMillis();
+
+        Waiter(String job, int priority) {
+            this.job = job;
+            this.priority = priority;
+        }
+
+        int getEffectivePriority(long now) {
+            return (int) Math.max(HIGH, priority - (now - since) / agingMillis);
+        }
+
+        long getLastAdmitted() {
+            Long last = lastAdmitted.get(job);
+            return (last != null) ? last.longValue() : -1;
+        }
+    }
+
+    private JythonPostbuildScheduler() {
+        this(AGING_MILLIS);
+    }
+
+    /**
+     * For tests.
+     */
+    JythonPostbuildScheduler(long agingMillis) {
+        this.agingMillis = agingMillis;
+    }
+
+    static JythonPostbuildScheduler get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Waits until a recorder can run.
+     *
+     * @param job
+     *            the full name of the job of the recorder, used to share the slots between jobs
+     * @param priority
+     *            {@link #HIGH}, {@link #NORMAL} or {@link #LOW}
+     * @param maxRunning
+     *            the maximum number of recorders running at the same time, 0 for no limit
+     * @return the time waited, in milliseconds
+     * @throws InterruptedException
+     *            if interrupted while waiting, in which case {@link #release()} must not be called
+     */
+    long acquire(String job, int priority, int maxRunning) throws InterruptedException {
+        lock.lock();
+        try {
+            Waiter waiter = new Waiter(job, priority);
+            waiting.add(waiter);
+            try {
+                while (maxRunning > 0 && (running >= maxRunning || next() != waiter)) {
+                    // wake up regularly, as the aging may change the next waiter
+                    changed.await(agingMillis, TimeUnit.MILLISECONDS);
+                }
+            } catch (InterruptedException e) {
+                remove(waiter);
+                changed.signalAll();
+                throw e;
+            }
+            remove(waiter);
+            running++;
+            long waited = System.currentTimeMillis() - waiter.since;
+            admitted++;
+            if (isWaiting(job)) {
+                lastAdmitted.put(job, admitted);
+            }
+            totalWaitMillis += waited;
+            maxWaitMillis = Math.max(maxWaitMillis, waited);
+            changed.signalAll();
+            return waited;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void release() {
+        lock.lock();
+        try {
+            running--;
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void remove(Waiter waiter) {
+        waiting.remove(waiter);
+        if (!isWaiting(waiter.job)) {
+            lastAdmitted.remove(waiter.job);
+        }
+    }
+
+    private boolean isWaiting(String job) {
+        for (Waiter waiter : waiting) {
+            if (waiter.job.equals(job)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Waiter next() {
+        long now = System.currentTimeMillis();
+        Waiter next = null;
+        int nextPriority = Integer.MAX_VALUE;
+        long nextLastAdmitted = Long.MAX_VALUE;
+        // waiting is in arrival order, so the first waiter wins among equal priorities and jobs
+        for (Waiter waiter : waiting) {
+            int priority = waiter.getEffectivePriority(now);
+            long last = waiter.getLastAdmitted();
+            if (priority < nextPriority || (priority == nextPriority && last < nextLastAdmitted)) {
+                next = waiter;
+                nextPriority = priority;
+                nextLastAdmitted = last;
+            }
+        }
+        return next;
+    }
+
+    int getRunning() {
+        lock.lock();
+        try {
+            return running;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int getQueued() {
+        lock.lock();
+        try {
+            return waiting.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    long getAdmitted() {
+        lock.lock();
+        try {
+            return admitted;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    long getTotalWaitMillis() {
+        lock.lock();
+        try {
+            return totalWaitMillis;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    long getMaxWaitMillis() {
+        lock.lock();
+        try {
+            return maxWaitMillis;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    static int parsePriority(String priority) {
+        if ("HIGH".equals(priority)) {
+            return HIGH;
+        }
+        if ("LOW".equals(priority)) {
+            return LOW;
+        }
+        return NORMAL;
+    }
+}
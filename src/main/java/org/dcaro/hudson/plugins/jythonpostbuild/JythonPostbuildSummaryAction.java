@@ -24,13 +24,18 @@
 package org.dcaro.hudson.plugins.jythonpostbuild;
 
 import hudson.model.Action;
+import hudson.model.Run;
+import jenkins.model.RunAction2;
 
 import org.apache.commons.lang.StringEscapeUtils;
 import org.kohsuke.stapler.export.Exported;
 import org.kohsuke.stapler.export.ExportedBean;
 
+/**
+ * A summary of a build, also listed in its {@link JythonPostbuildBadgeIndex}.
+ */
 @ExportedBean(defaultVisibility=2)
-public class JythonPostbuildSummaryAction implements Action {
+public class JythonPostbuildSummaryAction implements Action, RunAction2 {
     private final String iconPath;
     private final StringBuilder textBuilder = new StringBuilder();
 
@@ -43,6 +48,10 @@ public class JythonPostbuildSummaryAction implements Action {
     public String getDisplayName() { return ""; }
     public String getIconFileName() { return null; }
 
+    /* RunAction2 methods, for summaries added to the build with addAction() */
+    public void onAttached(Run<?, ?> r) { JythonPostbuildBadgeIndex.attached(r, this); }
+    public void onLoad(Run<?, ?> r) { }
+
     @Exported public String getIconPath() { return iconPath; }
     @Exported public String getText() { return textBuilder.toString(); }
 
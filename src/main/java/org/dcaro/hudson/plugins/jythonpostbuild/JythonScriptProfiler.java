@@ -0,0 +1,230 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2014, David Caro
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.dcaro.hudson.plugins.jythonpostbuild;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.python.core.Py;
+import org.python.core.PyBaseCode;
+import org.python.core.PyFrame;
+import org.python.core.ThreadState;
+
+/**
+ * Sampling profiler for the Jython scripts of {@link JythonPostbuildRecorder}.
+ *
+ * A background thread looks every {@link #INTERVAL_MILLIS} at the current
+ * Python frame of the thread running the script. The frames are plain fields
+ * of Jython, read without synchronization: a reference or an int can't be torn,
+ * but a sample may be slightly stale, and samples that don't point into the
+ * script are dropped, so the report is an approximation.
+ *
+ * The script itself is not instrumented. Walking its Java stack, to find out
+ * whether it is inside a {@link JythonPostbuildRecorder.BadgeManager} call,
+ * stops it at a safepoint, so this is only done every {@link #STACK_INTERVAL_MILLIS}.
+ */
+class JythonScriptProfiler implements Runnable {
+    private static final Logger LOGGER = Logger.getLogger(JythonScriptProfiler.class.getName());
+
+    static final long INTERVAL_MILLIS = 10;
+    static final long STACK_INTERVAL_MILLIS = 100;
+    /** File name of the code compiled by {@link org.python.util.PythonInterpreter#exec(String)}. */
+    static final String SCRIPT_FILENAME = "<string>";
+    private static final String MANAGER_CLASS = JythonPostbuildRecorder.BadgeManager.class.getName();
+
+    private final Thread target;
+    private final ThreadState state;
+    private final Map<String, Integer> lines = new HashMap<String, Integer>();
+    private final Map<String, Integer> functions = new HashMap<String, Integer>();
+    private final Map<String, Integer> managerCalls = new HashMap<String, Integer>();
+    private volatile boolean running;
+    private Thread sampler;
+    /** Only written by the sampler thread, volatile for {@link #getSamples()}. */
+    private volatile int samples;
+    private int stackSamples;
+
+    /**
+     * Creates a profiler for the script run by the current thread.
+     */
+    JythonScriptProfiler() {
+        this.target = Thread.currentThread();
+        this.state = Py.getThreadState();
+    }
+
+    void start() {
+        running = true;
+        sampler = new Thread(this, "Jython Postbuild profiler for " + target.getName());
+        sampler.setDaemon(true);
+        sampler.start();
+    }
+
+    void stop() {
+        running = false;
+        try {
+            sampler.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public void run() {
+        try {
+            while (running) {
+                Thread.sleep(INTERVAL_MILLIS);
+                sample();
+            }
+        } catch (InterruptedException e) {
+            LOGGER.log(Level.FINE, "Profiler interrupted", e);
+        }
+    }
+
+    private void sample() {
+        // each field is read once, as the script thread keeps changing them
+        PyFrame frame = state.frame;
+        PyBaseCode code = null;
+        while (frame != null) {
+            code = frame.f_code;
+            if (code != null && SCRIPT_FILENAME.equals(code.co_filename)) {
+                break;
+            }
+            frame = frame.f_back;
+        }
+        if (frame == null) {
+            return;
+        }
+        int line = frame.f_lineno;
+        if (line <= 0) {
+            return;
+        }
+        String managerCall = null;
+        if ((samples + 1) % (STACK_INTERVAL_MILLIS / INTERVAL_MILLIS) == 0) {
+            managerCall = "";
+            for (StackTraceElement element : target.getStackTrace()) {
+                if (MANAGER_CLASS.equals(element.getClassName())) {
+                    managerCall = element.getMethodName();
+                    break;
+                }
+            }
+        }
+        record(line, code.co_name, managerCall);
+    }
+
+    /**
+     * Records a sample.
+     *
+     * @param managerCall
+     *            the {@link JythonPostbuildRecorder.BadgeManager} method being called, an empty
+     *            string if none, or null if the Java stack wasn't sampled
+     */
+    void record(int line, String function, String managerCall) {
+        samples++;
+        increment(lines, line + ":" + function);
+        increment(functions, function);
+        if (managerCall != null) {
+            stackSamples++;
+            if (managerCall.length() > 0) {
+                increment(managerCalls, managerCall);
+            }
+        }
+    }
+
+    int getSamples() {
+        return samples;
+    }
+
+    private static void increment(Map<String, Integer> counts, String key) {
+        Integer count = counts.get(key);
+        counts.put(key, (count == null) ? 1 : count + 1);
+    }
+
+    /**
+     * Appends the hot spots to a summary, once the profiler is stopped.
+     *
+     * @param summary
+     *            the summary to append to
+     * @param script
+     *            the profiled script, to show the source of the hot lines
+     * @param top
+     *            the number of hot spots to show in each table
+     */
+    void appendReport(JythonPostbuildSummaryAction summary, String script, int top) {
+        summary.appendText("Jython script profile: ", false, true, false, null);
+        summary.appendText(samples + " samples, one every " + INTERVAL_MILLIS + " ms (" + stackSamples
+                + " of the Java stack, one every " + STACK_INTERVAL_MILLIS + " ms)", true);
+        if (samples == 0) {
+            return;
+        }
+        String[] source = script.split("\r?\n", -1);
+        summary.appendText("<table class=\"pane\"><tr><th class=\"pane-header\">Line</th><th class=\"pane-header\">Function</th>"
+                + "<th class=\"pane-header\">~ms</th><th class=\"pane-header\">%</th><th class=\"pane-header\">Source</th></tr>", false);
+        for (Map.Entry<String, Integer> entry : top(lines, top)) {
+            String key = entry.getKey();
+            int separator = key.indexOf(':');
+            int line = Integer.parseInt(key.substring(0, separator));
+            String text = (line > 0 && line <= source.length) ? source[line - 1].trim() : "";
+            summary.appendText("<tr><td class=\"pane\">" + line + "</td><td class=\"pane\">", false);
+            summary.appendText(key.substring(separator + 1), true);
+            summary.appendText("</td>" + cells(entry.getValue(), samples, INTERVAL_MILLIS) + "<td class=\"pane\"><code>", false);
+            summary.appendText(text, true);
+            summary.appendText("</code></td></tr>", false);
+        }
+        summary.appendText("</table>", false);
+        appendTable(summary, "Function", top(functions, top), samples, INTERVAL_MILLIS);
+        if (!managerCalls.isEmpty()) {
+            appendTable(summary, "manager call", top(managerCalls, top), stackSamples, STACK_INTERVAL_MILLIS);
+        }
+    }
+
+    private void appendTable(JythonPostbuildSummaryAction summary, String title, List<Map.Entry<String, Integer>> entries,
+            int total, long interval) {
+        summary.appendText("<table class=\"pane\"><tr><th class=\"pane-header\">" + title + "</th>"
+                + "<th class=\"pane-header\">~ms</th><th class=\"pane-header\">%</th></tr>", false);
+        for (Map.Entry<String, Integer> entry : entries) {
+            summary.appendText("<tr><td class=\"pane\">", false);
+            summary.appendText(entry.getKey(), true);
+            summary.appendText("</td>" + cells(entry.getValue(), total, interval) + "</tr>", false);
+        }
+        summary.appendText("</table>", false);
+    }
+
+    private static String cells(int count, int total, long interval) {
+        return "<td class=\"pane\">" + (count * interval) + "</td><td class=\"pane\">" + (count * 100 / total) + "</td>";
+    }
+
+    private static List<Map.Entry<String, Integer>> top(Map<String, Integer> counts, int top) {
+        List<Map.Entry<String, Integer>> entries = new ArrayList<Map.Entry<String, Integer>>(counts.entrySet());
+        Collections.sort(entries, new Comparator<Map.Entry<String, Integer>>() {
+            public int compare(Map.Entry<String, Integer> a, Map.Entry<String, Integer> b) {
+                return b.getValue().compareTo(a.getValue());
+            }
+        });
+        return entries.subList(0, Math.min(top, entries.size()));
+    }
+}
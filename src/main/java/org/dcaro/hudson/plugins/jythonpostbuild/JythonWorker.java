@@ -0,0 +1,204 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2014, David Caro
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.dcaro.hudson.plugins.jythonpostbuild;
+
+import hudson.util.DaemonThreadFactory;
+import hudson.util.IOUtils;
+import hudson.util.NamingThreadFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A worker JVM running {@link JythonWorkerMain}, as seen from the controller.
+ */
+class JythonWorker {
+    private static final Logger LOGGER = Logger.getLogger(JythonWorker.class.getName());
+    /**
+     * Reads the responses, since a blocking pipe read can't be interrupted nor
+     * given a timeout. Closing the pipe ends the read.
+     */
+    private static final ExecutorService READERS = Executors.newCachedThreadPool(
+            new NamingThreadFactory(new DaemonThreadFactory(), "Jython worker reader"));
+
+    private final int heapMB;
+    private final Process process;
+    private final ObjectOutputStream out;
+    private final ObjectInputStream in;
+    private int executions;
+    private long baselineHeap = -1;
+    private long usedHeap;
+    private volatile boolean destroyed;
+
+    JythonWorker(List<String> command, int heapMB) throws IOException {
+        this.heapMB = heapMB;
+        LOGGER.fine("Starting Jython worker: " + command);
+        process = new ProcessBuilder(command).start();
+        drainStderr();
+        try {
+            out = new ObjectOutputStream(new BufferedOutputStream(process.getOutputStream()));
+            out.flush();
+            in = new ObjectInputStream(new BufferedInputStream(process.getInputStream()));
+        } catch (IOException e) {
+            process.destroy();
+            throw e;
+        }
+    }
+
+    private void drainStderr() {
+        final BufferedReader stderr = new BufferedReader(new InputStreamReader(process.getErrorStream()));
+        Thread thread = new Thread("Jython worker stderr") {
+            @Override
+            public void run() {
+                try {
+                    String line;
+                    while ((line = stderr.readLine()) != null) {
+                        LOGGER.fine(line);
+                    }
+                } catch (IOException e) {
+                    // the worker is gone
+                } finally {
+                    IOUtils.closeQuietly(stderr);
+                }
+            }
+        };
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Runs a script. If it doesn't complete in time or if the worker fails, this
+     * worker is destroyed and the returned response holds the calls received so far
+     * and the reason as failure. If the calling thread is interrupted, this worker
+     * is destroyed too.
+     *
+     * @param timeoutMillis
+     *            the maximum time to wait for the response, 0 for no limit
+     */
+    JythonWorkerResponse execute(JythonWorkerRequest request, long timeoutMillis) throws IOException, InterruptedException {
+        out.writeObject(request);
+        out.flush();
+        out.reset();
+        final List<JythonWorkerResponse.Call> received = Collections.synchronizedList(new ArrayList<JythonWorkerResponse.Call>());
+        Future<JythonWorkerResponse> reply = READERS.submit(new Callable<JythonWorkerResponse>() {
+            public JythonWorkerResponse call() throws IOException, ClassNotFoundException {
+                while (true) {
+                    Object o = in.readObject();
+                    if (o instanceof JythonWorkerResponse.Batch) {
+                        received.addAll(((JythonWorkerResponse.Batch) o).calls);
+                    } else if (o instanceof JythonWorkerResponse) {
+                        return (JythonWorkerResponse) o;
+                    } else {
+                        throw new IOException("Unexpected response from the Jython worker: " + o);
+                    }
+                }
+            }
+        });
+        JythonWorkerResponse response;
+        try {
+            response = (timeoutMillis > 0) ? reply.get(timeoutMillis, TimeUnit.MILLISECONDS) : reply.get();
+        } catch (TimeoutException e) {
+            return failed(reply, received,
+                    "The Jython script didn't complete within " + (timeoutMillis / 1000) + " seconds, its worker JVM was stopped");
+        } catch (InterruptedException e) {
+            destroy();
+            throw e;
+        } catch (ExecutionException e) {
+            StringWriter writer = new StringWriter();
+            e.getCause().printStackTrace(new PrintWriter(writer));
+            return failed(reply, received, "The Jython worker JVM failed, it was stopped: " + writer);
+        }
+        executions++;
+        usedHeap = response.usedHeap;
+        if (baselineHeap < 0) {
+            baselineHeap = usedHeap;
+        }
+        List<JythonWorkerResponse.Call> calls = new ArrayList<JythonWorkerResponse.Call>(received);
+        calls.addAll(response.calls);
+        return new JythonWorkerResponse(calls, response.output, response.failure, response.usedHeap);
+    }
+
+    /**
+     * Destroys this worker and waits for the reader to stop, so the calls received
+     * before the failure can be replayed.
+     */
+    private JythonWorkerResponse failed(Future<JythonWorkerResponse> reply, List<JythonWorkerResponse.Call> received,
+            String failure) throws InterruptedException {
+        destroy();
+        try {
+            reply.get();
+        } catch (ExecutionException e) {
+            // the pipe was closed
+        }
+        return new JythonWorkerResponse(received, "", failure, usedHeap);
+    }
+
+    int getHeapMB() {
+        return heapMB;
+    }
+
+    /**
+     * @return true if this worker was destroyed, ran too many scripts or if its heap grew too much since its first script
+     */
+    boolean isWornOut(int maxExecutions, long maxHeapGrowth) {
+        return destroyed
+                || (maxExecutions > 0 && executions >= maxExecutions)
+                || (maxHeapGrowth > 0 && usedHeap - baselineHeap > maxHeapGrowth);
+    }
+
+    /**
+     * Stops the worker JVM. Can be called more than once.
+     */
+    void destroy() {
+        destroyed = true;
+        IOUtils.closeQuietly(out);
+        IOUtils.closeQuietly(in);
+        process.destroy();
+        try {
+            process.waitFor();
+        } catch (InterruptedException e) {
+            LOGGER.log(Level.FINE, "Interrupted while stopping a Jython worker", e);
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2014, David Caro
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.dcaro.hudson.plugins.jythonpostbuild;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.python.core.Py;
+import org.python.core.PyObject;
+import org.python.util.PythonInterpreter;
+
+/**
+ * Entry point of the worker JVMs started by {@link JythonWorkerPool}.
+ *
+ * Reads {@link JythonWorkerRequest}s from stdin, runs each script in a fresh
+ * interpreter and writes a {@link JythonWorkerResponse} to stdout, until stdin
+ * is closed. The calls recorded by the script are sent every {@link #BATCH_MILLIS}
+ * in a {@link JythonWorkerResponse.Batch} before the response. Anything else written
+ * to stdout goes to stderr, so it can't corrupt the stream of responses.
+ */
+public class JythonWorkerMain {
+    static final long BATCH_MILLIS = 250;
+
+    private static final ScheduledExecutorService FLUSHER = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "Jython worker flusher");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    public static void main(String[] args) throws Exception {
+        PrintStream stdout = System.out;
+        System.setOut(System.err);
+        final ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(stdout));
+        out.flush();
+        ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(System.in));
+
+        PythonInterpreter.initialize(System.getProperties(), System.getProperties(), new String[0]);
+        while (true) {
+            JythonWorkerRequest request;
+            try {
+                request = (JythonWorkerRequest) in.readObject();
+            } catch (EOFException e) {
+                return;
+            }
+            final RemoteBadgeManager manager = new RemoteBadgeManager(request);
+            ScheduledFuture<?> flusher = FLUSHER.scheduleWithFixedDelay(new Runnable() {
+                public void run() {
+                    try {
+                        // taken and sent under the same lock, so the batches are sent in order
+                        synchronized (manager) {
+                            List<JythonWorkerResponse.Call> calls = manager.takeCalls();
+                            if (!calls.isEmpty()) {
+                                send(out, new JythonWorkerResponse.Batch(calls));
+                            }
+                        }
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                }
+            }, BATCH_MILLIS, BATCH_MILLIS, TimeUnit.MILLISECONDS);
+            JythonWorkerResponse response;
+            try {
+                response = execute(request, manager);
+            } finally {
+                flusher.cancel(false);
+            }
+            synchronized (manager) {
+                send(out, response);
+            }
+        }
+    }
+
+    private static void send(ObjectOutputStream out, Object o) throws IOException {
+        out.writeObject(o);
+        out.flush();
+        out.reset();
+    }
+
+    static JythonWorkerResponse execute(JythonWorkerRequest request, RemoteBadgeManager manager) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        String failure = null;
+        PythonInterpreter interp = new PythonInterpreter();
+        try {
+            interp.setOut(output);
+            interp.setErr(output);
+            interp.set("manager", manager);
+            interp.set("self", new UnavailableRecorder());
+            interp.exec(request.script);
+        } catch (Throwable t) {
+            StringWriter writer = new StringWriter();
+            t.printStackTrace(new PrintWriter(writer));
+            failure = writer.toString();
+        } finally {
+            interp.cleanup();
+        }
+        synchronized (manager) {
+            return new JythonWorkerResponse(manager.takeCalls(), output.toString(), failure, usedHeap());
+        }
+    }
+
+    /**
+     * Bound to <code>self</code>, the recorder when the script runs in Jenkins, so that
+     * using it fails with a clear message instead of a NameError.
+     */
+    private static class UnavailableRecorder extends PyObject {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public PyObject __findattr_ex__(String name) {
+            throw Py.NotImplementedError("self (the recorder) is not available to scripts run in a worker JVM");
+        }
+    }
+
+    /**
+     * @return the heap used after the last garbage collection of each pool, which
+     *         unlike the current usage doesn't include the garbage not yet collected
+     */
+    private static long usedHeap() {
+        long used = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            MemoryUsage usage = pool.getCollectionUsage();
+            if (pool.getType() == MemoryType.HEAP && usage != null) {
+                used += usage.getUsed();
+            }
+        }
+        return used;
+    }
+}
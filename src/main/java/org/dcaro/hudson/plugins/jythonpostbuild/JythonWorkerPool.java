@@ -0,0 +1,140 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2014, David Caro
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.dcaro.hudson.plugins.jythonpostbuild;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.python.util.PythonInterpreter;
+
+/**
+ * Pool of long-lived local JVMs running the Jython scripts of the recorders
+ * configured with {@link JythonPostbuildRecorder#isRunInWorker()}, so that the
+ * memory allocated by the scripts is not garbage collected by the controller.
+ *
+ * Workers are started on demand, up to {@link JythonPostbuildDescriptor#getWorkerCount()},
+ * and are replaced after {@link JythonPostbuildDescriptor#getWorkerMaxExecutions()}
+ * scripts or when their heap grew more than {@link JythonPostbuildDescriptor#getWorkerMaxHeapGrowthMB()}.
+ */
+final class JythonWorkerPool {
+    private static final JythonWorkerPool INSTANCE = new JythonWorkerPool();
+
+    private final LinkedList<JythonWorker> idle = new LinkedList<JythonWorker>();
+    private int started;
+    private boolean stopped;
+
+    private JythonWorkerPool() {
+    }
+
+    static JythonWorkerPool get() {
+        return INSTANCE;
+    }
+
+    JythonWorkerResponse execute(JythonWorkerRequest request, JythonPostbuildDescriptor config) throws IOException, InterruptedException {
+        JythonWorker worker = acquire(Math.max(1, config.getWorkerCount()));
+        boolean reusable = false;
+        try {
+            if (worker == null) {
+                worker = new JythonWorker(command(config.getWorkerHeapMB()), config.getWorkerHeapMB());
+            }
+            JythonWorkerResponse response = worker.execute(request, config.getWorkerTimeoutSeconds() * 1000L);
+            reusable = worker.getHeapMB() == config.getWorkerHeapMB()
+                    && !worker.isWornOut(config.getWorkerMaxExecutions(), config.getWorkerMaxHeapGrowthMB() * 1024L * 1024L);
+            return response;
+        } finally {
+            release(worker, reusable);
+        }
+    }
+
+    /**
+     * @return an idle worker, or null if a new one must be started
+     */
+    private synchronized JythonWorker acquire(int maxWorkers) throws InterruptedException {
+        while (idle.isEmpty() && started >= maxWorkers) {
+            wait();
+        }
+        if (!idle.isEmpty()) {
+            return idle.removeFirst();
+        }
+        started++;
+        return null;
+    }
+
+    private synchronized void release(JythonWorker worker, boolean reusable) {
+        if (reusable && !stopped) {
+            idle.addFirst(worker);
+        } else {
+            started--;
+            if (worker != null) {
+                worker.destroy();
+            }
+        }
+        notifyAll();
+    }
+
+    /**
+     * Lets the released workers be reused again, as Jenkins may start the plugin again in
+     * the same JVM (e.g. on a reload, or in tests) after {@link #shutdown()}.
+     */
+    synchronized void start() {
+        stopped = false;
+    }
+
+    /**
+     * Stops the idle workers, until {@link #start()}. The busy ones are stopped when their script is over.
+     */
+    synchronized void shutdown() {
+        stopped = true;
+        for (JythonWorker worker : idle) {
+            worker.destroy();
+        }
+        started -= idle.size();
+        idle.clear();
+    }
+
+    private static List<String> command(int heapMB) throws IOException {
+        List<String> command = new ArrayList<String>();
+        command.add(new File(new File(System.getProperty("java.home"), "bin"), "java").getPath());
+        if (heapMB > 0) {
+            command.add("-Xmx" + heapMB + "m");
+        }
+        command.add("-Dpython.cachedir.skip=true");
+        command.add("-cp");
+        command.add(classpathOf(PythonInterpreter.class) + File.pathSeparator + classpathOf(JythonWorkerMain.class));
+        command.add(JythonWorkerMain.class.getName());
+        return command;
+    }
+
+    private static String classpathOf(Class<?> clazz) throws IOException {
+        try {
+            return new File(clazz.getProtectionDomain().getCodeSource().getLocation().toURI()).getPath();
+        } catch (URISyntaxException e) {
+            throw new IOException("Unable to locate the classes of " + clazz, e);
+        }
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2014, David Caro
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.dcaro.hudson.plugins.jythonpostbuild;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A script sent to a {@link JythonWorkerMain} process.
+ */
+class JythonWorkerRequest implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    final String script;
+    final HashMap<String, String> envVars;
+    final String logFile;
+    final String charset;
+    final String result;
+    /** Results published by the children, when the build is a matrix parent. */
+    final HashMap<String, Map<String, String>> childResults = new HashMap<String, Map<String, String>>();
+
+    JythonWorkerRequest(String script, Map<String, String> envVars, String logFile, String charset, String result) {
+        this.script = script;
+        this.envVars = (envVars != null) ? new HashMap<String, String>(envVars) : new HashMap<String, String>();
+        this.logFile = logFile;
+        this.charset = charset;
+        this.result = result;
+    }
+}
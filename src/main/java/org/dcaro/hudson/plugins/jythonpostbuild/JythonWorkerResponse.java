@@ -0,0 +1,100 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2014, David Caro
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.dcaro.hudson.plugins.jythonpostbuild;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The outcome of a script run by a {@link JythonWorkerMain} process: the
+ * {@link RemoteBadgeManager} calls to replay on the build, the output of the
+ * script and its failure, if any.
+ *
+ * While the script runs, its calls are also sent in {@link Batch}es, so that they
+ * are not lost if the script times out or its worker fails. The response then only
+ * holds the calls not sent yet.
+ */
+class JythonWorkerResponse implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    final ArrayList<Call> calls;
+    final String output;
+    final String failure;
+    /** Heap used by the worker after its last garbage collection, in bytes. */
+    final long usedHeap;
+
+    JythonWorkerResponse(List<Call> calls, String output, String failure, long usedHeap) {
+        this.calls = new ArrayList<Call>(calls);
+        this.output = output;
+        this.failure = failure;
+        this.usedHeap = usedHeap;
+    }
+
+    /**
+     * Calls recorded while the script is still running.
+     */
+    static class Batch implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        final ArrayList<Call> calls;
+
+        Batch(List<Call> calls) {
+            this.calls = new ArrayList<Call>(calls);
+        }
+    }
+
+    /**
+     * A call to a {@link JythonPostbuildRecorder.BadgeManager} method, recorded by the worker.
+     */
+    static class Call implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        final String method;
+        final Object[] args;
+
+        Call(String method, Object... args) {
+            this.method = method;
+            this.args = args;
+        }
+
+        String getString(int index) {
+            return (String) args[index];
+        }
+
+        int getInt(int index) {
+            return ((Integer) args[index]).intValue();
+        }
+
+        boolean getBoolean(int index) {
+            return ((Boolean) args[index]).booleanValue();
+        }
+
+        @Override
+        public String toString() {
+            return method + Arrays.toString(args);
+        }
+    }
+}
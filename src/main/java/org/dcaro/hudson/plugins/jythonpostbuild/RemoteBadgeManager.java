@@ -0,0 +1,251 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2014, David Caro
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.dcaro.hudson.plugins.jythonpostbuild;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.xml.stream.XMLStreamException;
+
+/**
+ * The <code>manager</code> variable of the scripts run by a {@link JythonWorkerMain}
+ * process. It mirrors {@link JythonPostbuildRecorder.BadgeManager}, but the
+ * changes to the build are only recorded, sent to the controller by batches and
+ * replayed by the controller once the script is over.
+ *
+ * The build, the Jenkins instance and the workspace can't be accessed from a
+ * worker, so <code>getBuild()</code>, <code>getHudson()</code>, <code>setBuildNumber()</code>,
+ * <code>buildIsA()</code> and <code>parseTestReports()</code> are not available: the scripts
+ * using them are rejected by {@link #findUnsupported(String)} before being sent to a worker.
+ */
+public class RemoteBadgeManager {
+    private static final Pattern UNSUPPORTED = Pattern.compile(
+            "(?<![\\w.])manager\\s*\\.\\s*(getBuild|build|getHudson|hudson|setBuildNumber|buildIsA|parseTestReports)(?!\\w)");
+
+    private final JythonWorkerRequest request;
+    private final List<JythonWorkerResponse.Call> calls = new ArrayList<JythonWorkerResponse.Call>();
+    private int summaries;
+
+    public class RemoteSummary {
+        private final int index;
+
+        RemoteSummary(int index) {
+            this.index = index;
+        }
+
+        public void appendText(String text, boolean escapeHtml) {
+            record("appendText", index, text, escapeHtml);
+        }
+
+        public void appendText(String text, boolean escapeHtml, boolean bold, boolean italic, String color) {
+            record("appendText", index, text, escapeHtml, bold, italic, color);
+        }
+    }
+
+    RemoteBadgeManager(JythonWorkerRequest request) {
+        this.request = request;
+    }
+
+    /**
+     * @return the first <code>manager</code> method of the script that isn't available in a worker,
+     *         e.g. <code>manager.getBuild</code>, or null if none
+     */
+    static String findUnsupported(String script) {
+        Matcher matcher = UNSUPPORTED.matcher(script);
+        return matcher.find() ? "manager." + matcher.group(1) : null;
+    }
+
+    /**
+     * @return the calls recorded since the previous call
+     */
+    synchronized List<JythonWorkerResponse.Call> takeCalls() {
+        List<JythonWorkerResponse.Call> taken = new ArrayList<JythonWorkerResponse.Call>(calls);
+        calls.clear();
+        return taken;
+    }
+
+    private synchronized void record(String method, Object... args) {
+        calls.add(new JythonWorkerResponse.Call(method, args));
+    }
+
+    public Map<String, String> getEnvVars() {
+        return Collections.unmodifiableMap(request.envVars);
+    }
+
+    public String getEnvVariable(String key) {
+        return request.envVars.get(key);
+    }
+
+    public void println(String string) {
+        record("println", string);
+    }
+
+    public void addShortText(String text) {
+        record("addShortText", text);
+    }
+
+    public void addShortText(String text, String color, String background, String border, String borderColor) {
+        record("addShortText", text, color, background, border, borderColor);
+    }
+
+    public void addBadge(String icon, String text) {
+        record("addBadge", icon, text);
+    }
+
+    public void addBadge(String icon, String text, String link) {
+        record("addBadge", icon, text, link);
+    }
+
+    public void addInfoBadge(String text) {
+        record("addInfoBadge", text);
+    }
+
+    public void addWarningBadge(String text) {
+        record("addWarningBadge", text);
+    }
+
+    public void addErrorBadge(String text) {
+        record("addErrorBadge", text);
+    }
+
+    public void removeBadges() {
+        record("removeBadges");
+    }
+
+    public void removeBadge(int index) {
+        record("removeBadge", index);
+    }
+
+    public RemoteSummary createSummary(String icon) {
+        record("createSummary", icon);
+        return new RemoteSummary(summaries++);
+    }
+
+    public void removeSummaries() {
+        record("removeSummaries");
+    }
+
+    public void removeSummary(int index) {
+        record("removeSummary", index);
+    }
+
+    public void publish(String key, String value) {
+        record("publish", key, value);
+    }
+
+    public Map<String, Map<String, String>> getChildResults() {
+        return request.childResults;
+    }
+
+    public String getChildResult(String combination, String key) {
+        Map<String, String> values = request.childResults.get(combination);
+        return (values != null) ? values.get(key) : null;
+    }
+
+    public void buildUnstable() {
+        record("buildUnstable");
+    }
+
+    public void buildFailure() {
+        record("buildFailure");
+    }
+
+    public void buildSuccess() {
+        record("buildSuccess");
+    }
+
+    public void buildAborted() {
+        record("buildAborted");
+    }
+
+    public void buildNotBuilt() {
+        record("buildNotBuilt");
+    }
+
+    /**
+     * @return the result of the build when the script was started
+     */
+    public String getResult() {
+        return request.result;
+    }
+
+    public boolean logContains(String regexp) throws IOException {
+        return contains(new File(request.logFile), regexp);
+    }
+
+    public boolean contains(File f, String regexp) throws IOException {
+        Matcher matcher = getMatcher(f, regexp);
+        return (matcher != null) && matcher.matches();
+    }
+
+    public Matcher getLogMatcher(String regexp) throws IOException {
+        return getMatcher(new File(request.logFile), regexp);
+    }
+
+    public Matcher getMatcher(File f, String regexp) throws IOException {
+        Pattern pattern = Pattern.compile(regexp);
+        boolean isLog = f.equals(new File(request.logFile));
+        InputStream in = isLog ? new ConsoleNoteStrippingInputStream(new FileInputStream(f)) : new FileInputStream(f);
+        try {
+            BufferedReader reader = new BufferedReader(isLog
+                    ? new InputStreamReader(in, Charset.forName(request.charset)) : new InputStreamReader(in));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                Matcher m = pattern.matcher(line);
+                if (m.matches()) {
+                    return m;
+                }
+            }
+            return null;
+        } finally {
+            in.close();
+        }
+    }
+
+    public TestReportSummary parseTestReport(File f) throws IOException, XMLStreamException {
+        return parseTestReport(f, 10, 100);
+    }
+
+    public TestReportSummary parseTestReport(File f, int maxSlowest, int maxFailed) throws IOException, XMLStreamException {
+        TestReportSummary summary = new TestReportSummary(maxSlowest, maxFailed);
+        InputStream in = new FileInputStream(f);
+        try {
+            new TestReportParser().parse(in, summary);
+        } finally {
+            in.close();
+        }
+        return summary;
+    }
+}
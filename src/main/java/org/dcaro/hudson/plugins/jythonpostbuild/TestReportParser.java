@@ -0,0 +1,148 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2014, David Caro
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.dcaro.hudson.plugins.jythonpostbuild;
+
+import java.io.InputStream;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Streaming (StAX) parser for JUnit and TestNG XML reports.
+ *
+ * Test cases are fed to a {@link TestReportSummary} as soon as they are read,
+ * so no tree of the report is ever built in memory.
+ */
+class TestReportParser {
+    /** Longest failure message kept for a single test case. */
+    static final int MAX_MESSAGE_LENGTH = 1024;
+
+    private final XMLInputFactory factory;
+
+    TestReportParser() {
+        factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+    }
+
+    void parse(InputStream in, TestReportSummary summary) throws XMLStreamException {
+        XMLStreamReader reader = factory.createXMLStreamReader(in);
+        try {
+            String testNGClass = null;
+            boolean inTestCase = false;
+            String className = null;
+            String name = null;
+            double time = 0;
+            String status = null;
+            String message = null;
+            StringBuilder text = null;
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    String element = reader.getLocalName();
+                    if ("testcase".equals(element)) {
+                        // JUnit
+                        inTestCase = true;
+                        className = reader.getAttributeValue(null, "classname");
+                        name = reader.getAttributeValue(null, "name");
+                        time = parseTime(reader.getAttributeValue(null, "time"), 1);
+                        status = TestReportSummary.PASSED;
+                        message = null;
+                    } else if ("class".equals(element)) {
+                        // TestNG
+                        testNGClass = reader.getAttributeValue(null, "name");
+                    } else if ("test-method".equals(element)) {
+                        // TestNG, configuration methods are not tests
+                        inTestCase = !"true".equals(reader.getAttributeValue(null, "is-config"));
+                        className = testNGClass;
+                        name = reader.getAttributeValue(null, "name");
+                        time = parseTime(reader.getAttributeValue(null, "duration-ms"), 0.001);
+                        status = parseTestNGStatus(reader.getAttributeValue(null, "status"));
+                        message = null;
+                    } else if (inTestCase && ("failure".equals(element) || "error".equals(element))) {
+                        status = "failure".equals(element) ? TestReportSummary.FAILED : TestReportSummary.ERROR;
+                        message = reader.getAttributeValue(null, "message");
+                        if (message == null) {
+                            text = new StringBuilder();
+                        }
+                    } else if (inTestCase && "skipped".equals(element)) {
+                        status = TestReportSummary.SKIPPED;
+                    } else if (inTestCase && "message".equals(element) && message == null) {
+                        text = new StringBuilder();
+                    }
+                } else if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA) {
+                    if (text != null && text.length() < MAX_MESSAGE_LENGTH) {
+                        text.append(reader.getText());
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    String element = reader.getLocalName();
+                    if ("testcase".equals(element) || "test-method".equals(element)) {
+                        if (inTestCase) {
+                            summary.addTestCase(className, name, time, status, truncate(message));
+                        }
+                        inTestCase = false;
+                    } else if ("class".equals(element)) {
+                        testNGClass = null;
+                    } else if (text != null && ("failure".equals(element) || "error".equals(element) || "message".equals(element))) {
+                        message = text.toString().trim();
+                        text = null;
+                    }
+                }
+            }
+            summary.addReport();
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static String parseTestNGStatus(String status) {
+        if ("FAIL".equals(status)) {
+            return TestReportSummary.FAILED;
+        }
+        if ("SKIP".equals(status)) {
+            return TestReportSummary.SKIPPED;
+        }
+        return TestReportSummary.PASSED;
+    }
+
+    private static double parseTime(String value, double scale) {
+        if (value == null) {
+            return 0;
+        }
+        try {
+            return Double.parseDouble(value.replace(",", "")) * scale;
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static String truncate(String message) {
+        if (message == null || message.length() <= MAX_MESSAGE_LENGTH) {
+            return message;
+        }
+        return message.substring(0, MAX_MESSAGE_LENGTH);
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2014, David Caro
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.dcaro.hudson.plugins.jythonpostbuild;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Aggregated view of one or more JUnit/TestNG report files, built by
+ * {@link TestReportParser}. Only counters, the slowest test cases and a
+ * bounded list of failures are kept, so memory does not grow with the
+ * size of the reports.
+ */
+public class TestReportSummary {
+    public static final String PASSED = "PASSED";
+    public static final String FAILED = "FAILED";
+    public static final String ERROR = "ERROR";
+    public static final String SKIPPED = "SKIPPED";
+
+    private static final Comparator<TestCaseResult> BY_TIME = new Comparator<TestCaseResult>() {
+        public int compare(TestCaseResult a, TestCaseResult b) {
+            return Double.compare(a.getTime(), b.getTime());
+        }
+    };
+
+    private final int maxSlowest;
+    private final int maxFailed;
+    private final PriorityQueue<TestCaseResult> slowest;
+    private final List<TestCaseResult> failed = new ArrayList<TestCaseResult>();
+    private int reports;
+    private int tests;
+    private int failures;
+    private int errors;
+    private int skipped;
+    private double time;
+
+    public static class TestCaseResult {
+        private final String className;
+        private final String name;
+        private final double time;
+        private final String status;
+        private final String message;
+
+        TestCaseResult(String className, String name, double time, String status, String message) {
+            this.className = className;
+            this.name = name;
+            this.time = time;
+            this.status = status;
+            this.message = message;
+        }
+
+        public String getClassName() { return className; }
+        public String getName() { return name; }
+        public double getTime() { return time; }
+        public String getStatus() { return status; }
+        public String getMessage() { return message; }
+
+        public String getFullName() {
+            return (className == null || className.length() == 0) ? name : className + "." + name;
+        }
+
+        @Override
+        public String toString() {
+            return getFullName() + " (" + status + ", " + time + "s)";
+        }
+    }
+
+    /**
+     * @param maxSlowest
+     *            how many of the slowest test cases to keep
+     * @param maxFailed
+     *            how many failed test cases to keep, the remaining ones are only counted
+     */
+    public TestReportSummary(int maxSlowest, int maxFailed) {
+        this.maxSlowest = Math.max(0, maxSlowest);
+        this.maxFailed = Math.max(0, maxFailed);
+        this.slowest = new PriorityQueue<TestCaseResult>(this.maxSlowest + 1, BY_TIME);
+    }
+
+    void addReport() {
+        reports++;
+    }
+
+    void addTestCase(String className, String name, double time, String status, String message) {
+        tests++;
+        this.time += time;
+        boolean isFailed = false;
+        if (FAILED.equals(status)) {
+            failures++;
+            isFailed = true;
+        } else if (ERROR.equals(status)) {
+            errors++;
+            isFailed = true;
+        } else if (SKIPPED.equals(status)) {
+            skipped++;
+        }
+        boolean keepSlow = maxSlowest > 0 && (slowest.size() < maxSlowest || slowest.peek().getTime() < time);
+        boolean keepFailed = isFailed && failed.size() < maxFailed;
+        if (!keepSlow && !keepFailed) {
+            return;
+        }
+        TestCaseResult result = new TestCaseResult(className, name, time, status, message);
+        if (keepSlow) {
+            slowest.add(result);
+            if (slowest.size() > maxSlowest) {
+                slowest.poll();
+            }
+        }
+        if (keepFailed) {
+            failed.add(result);
+        }
+    }
+
+    public int getReports() { return reports; }
+    public int getTests() { return tests; }
+    public int getFailures() { return failures; }
+    public int getErrors() { return errors; }
+    public int getSkipped() { return skipped; }
+    public int getPassed() { return tests - failures - errors - skipped; }
+    public double getTime() { return time; }
+
+    public boolean isSuccessful() {
+        return failures == 0 && errors == 0;
+    }
+
+    /**
+     * @return the slowest test cases, slowest first
+     */
+    public List<TestCaseResult> getSlowest() {
+        List<TestCaseResult> list = new ArrayList<TestCaseResult>(slowest);
+        Collections.sort(list, Collections.reverseOrder(BY_TIME));
+        return list;
+    }
+
+    /**
+     * @return the failed test cases (failures and errors), in report order,
+     *         at most as many as requested when creating this summary
+     */
+    public List<TestCaseResult> getFailed() {
+        return Collections.unmodifiableList(failed);
+    }
+
+    @Override
+    public String toString() {
+        return "Tests: " + tests + ", Failures: " + failures + ", Errors: " + errors + ", Skipped: " + skipped;
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2014 David Caro
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.dcaro.hudson.plugins.jythonpostbuild;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+import org.junit.Test;
+
+public class ConsoleNoteStrippingInputStreamTest {
+    private static final String NOTE = "\u001B[8mha:AAAAWB+LCAAAAAAAAP9b85aBtbiIQTGjNKU4P08vOT+vOD8nVc83PyU1x6OyILUoJzMv2y+/JJUBAhiZGBgqihhk0NSjKDWzXb3RdlLBUSYGJk8GtpzUvPSSDB8G5tK8khIhn6zEskT9nMS8dP3gkqLMvHTriiIgKiNkcy8/JRUA+0NLcF4AAAA=\u001B[0m";
+
+    private static String strip(String text, int chunk) throws Exception {
+        final int max = chunk;
+        InputStream raw = new ByteArrayInputStream(text.getBytes("UTF-8")) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                return super.read(b, off, Math.min(len, max));
+            }
+        };
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        IOUtils.copy(new ConsoleNoteStrippingInputStream(raw), out);
+        return out.toString("UTF-8");
+    }
+
+    private static void assertStripped(String expected, String text) throws Exception {
+        for (int chunk : new int[]{1, 2, 7, 8192}) {
+            assertEquals("chunk size " + chunk, expected, strip(text, chunk));
+        }
+        // removeNotes() is given one line at a time, with its end of line
+        StringBuilder lines = new StringBuilder();
+        for (String line : text.split("(?<=\n)")) {
+            byte[] b = line.getBytes("UTF-8");
+            lines.append(new String(b, 0, ConsoleNoteStrippingInputStream.removeNotes(b, b.length), "UTF-8"));
+        }
+        assertEquals("removeNotes", expected, lines.toString());
+    }
+
+    @Test
+    public void testPlainText() throws Exception {
+        assertStripped("Started by user anonymous\n", "Started by user anonymous\n");
+    }
+
+    @Test
+    public void testNotes() throws Exception {
+        assertStripped("Started by user anonymous\n", "Started by " + NOTE + "user anonymous\n");
+        assertStripped("aéb", NOTE + "aé" + NOTE + NOTE + "b");
+    }
+
+    @Test
+    public void testEscapeSequencesThatAreNotNotes() throws Exception {
+        assertStripped("x\u001B[8mh y", "x\u001B[8mh y");
+        assertStripped("x\u001By", "x\u001B" + NOTE + "y");
+        assertStripped("tail\u001B[8mha", "tail\u001B[8mha");
+    }
+
+    @Test
+    public void testUnterminatedNoteStopsAtEndOfLine() throws Exception {
+        assertStripped("bad\u001B[8mha:never\nnext", "bad\u001B[8mha:never\nnext");
+        assertStripped("bad\u001B[8mha:never\u001B[0\nnext\n", "bad\u001B[8mha:never\u001B[0\n" + NOTE + "next\n");
+        assertStripped("a b\n", "a \u001B[8mha:never" + NOTE + "b\n");
+        assertStripped("end\u001B[8mha:never", "end\u001B[8mha:never");
+        String longNote = "\u001B[8mha:" + StringUtils.repeat("A", 20000);
+        assertStripped(longNote + "\nnext", longNote + "\nnext");
+    }
+}
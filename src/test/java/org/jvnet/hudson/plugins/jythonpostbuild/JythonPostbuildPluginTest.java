@@ -0,0 +1,106 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2014 David Caro
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.dcaro.hudson.plugins.jythonpostbuild;
+
+import static org.junit.Assert.*;
+
+import java.net.URL;
+
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONNull;
+import net.sf.json.JSONObject;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import com.gargoylesoftware.htmlunit.Page;
+
+public class JythonPostbuildPluginTest {
+    @Rule
+    public JenkinsRule j = new JenkinsRule();
+
+    private Page get(JenkinsRule.WebClient wc, String query) throws Exception {
+        return wc.getPage(new URL(j.getURL(), "plugin/jython-postbuild/badges?job=p" + query));
+    }
+
+    private JSONObject badges(JenkinsRule.WebClient wc, String query) throws Exception {
+        Page page = get(wc, query);
+        assertEquals(200, page.getWebResponse().getStatusCode());
+        return JSONObject.fromObject(page.getWebResponse().getContentAsString());
+    }
+
+    @Test
+    public void testBadgesPagination() throws Exception {
+        FreeStyleProject p = j.createFreeStyleProject("p");
+        for (int i = 1; i <= 3; i++) {
+            FreeStyleBuild b = j.assertBuildStatusSuccess(p.scheduleBuild2(0));
+            b.addAction(JythonPostbuildAction.createShortText("build " + i));
+        }
+        JenkinsRule.WebClient wc = j.createWebClient();
+
+        JSONObject page = badges(wc, "&limit=2");
+        JSONArray builds = page.getJSONArray("builds");
+        assertEquals(2, builds.size());
+        assertEquals(3, builds.getJSONObject(0).getInt("number"));
+        assertEquals("build 3", builds.getJSONObject(0).getJSONArray("badges").getJSONObject(0).getString("text"));
+        assertEquals(2, builds.getJSONObject(1).getInt("number"));
+        assertEquals(2, page.getInt("next"));
+
+        page = badges(wc, "&limit=2&before=" + page.getInt("next"));
+        builds = page.getJSONArray("builds");
+        assertEquals(1, builds.size());
+        assertEquals(1, builds.getJSONObject(0).getInt("number"));
+        assertEquals(JSONNull.getInstance(), page.get("next"));
+    }
+
+    @Test
+    public void testBadgesInvalidParameters() throws Exception {
+        j.createFreeStyleProject("p");
+        JenkinsRule.WebClient wc = j.createWebClient();
+        wc.setThrowExceptionOnFailingStatusCode(false);
+
+        assertEquals(400, get(wc, "&limit=0").getWebResponse().getStatusCode());
+        assertEquals(400, get(wc, "&limit=abc").getWebResponse().getStatusCode());
+        assertEquals(400, get(wc, "&before=abc").getWebResponse().getStatusCode());
+    }
+
+    @Test
+    public void testBadgesHtmlIsEscaped() throws Exception {
+        FreeStyleProject p = j.createFreeStyleProject("p");
+        FreeStyleBuild b = j.assertBuildStatusSuccess(p.scheduleBuild2(0));
+        b.addAction(JythonPostbuildAction.createShortText("<script>alert(1)</script>"));
+        b.addAction(JythonPostbuildAction.createBadge("info.gif", "<script>alert(2)</script>"));
+
+        JSONArray badges = badges(j.createWebClient(), "").getJSONArray("builds").getJSONObject(0).getJSONArray("badges");
+        assertEquals(2, badges.size());
+        for (int i = 0; i < badges.size(); i++) {
+            String html = badges.getJSONObject(i).getString("html");
+            assertFalse(html, html.contains("<script>"));
+            assertTrue(html, html.contains("&lt;script&gt;alert(" + (i + 1) + ")&lt;/script&gt;"));
+        }
+    }
+}
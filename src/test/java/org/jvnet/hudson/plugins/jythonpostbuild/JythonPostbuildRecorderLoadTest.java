@@ -0,0 +1,265 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2014 David Caro
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.dcaro.hudson.plugins.jythonpostbuild;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import hudson.Launcher;
+import hudson.matrix.AxisList;
+import hudson.matrix.MatrixBuild;
+import hudson.matrix.MatrixProject;
+import hudson.matrix.TextAxis;
+import hudson.model.AbstractBuild;
+import hudson.model.AbstractProject;
+import hudson.model.BuildListener;
+import hudson.model.FreeStyleProject;
+
+import org.apache.commons.lang.StringUtils;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.TestBuilder;
+
+/**
+ * Load and soak test of {@link JythonPostbuildRecorder}: runs many freestyle
+ * and matrix builds at the same time, with large logs, and checks the
+ * throughput, the post-build latency, the heap growth and the retention of
+ * interpreters against configurable thresholds.
+ *
+ * Skipped unless run with <code>-Djythonpostbuild.loadtest=true</code>. The other
+ * <code>jythonpostbuild.loadtest.*</code> system properties tune the load and the thresholds.
+ */
+public class JythonPostbuildRecorderLoadTest {
+    private static final Logger LOGGER = Logger.getLogger(JythonPostbuildRecorderLoadTest.class.getName());
+    private static final String PREFIX = "jythonpostbuild.loadtest.";
+
+    private static final int FREESTYLE_PROJECTS = Integer.getInteger(PREFIX + "freestyle", 40);
+    private static final int MATRIX_PROJECTS = Integer.getInteger(PREFIX + "matrix", 5);
+    private static final int ROUNDS = Integer.getInteger(PREFIX + "rounds", 3);
+    private static final int LOG_LINES = Integer.getInteger(PREFIX + "logLines", 100000);
+    private static final long MAX_P95_MILLIS = Long.getLong(PREFIX + "maxP95Millis", 10000);
+    private static final double MIN_BUILDS_PER_SECOND = Double.parseDouble(System.getProperty(PREFIX + "minBuildsPerSecond", "0.5"));
+    private static final long MAX_HEAP_GROWTH_MB = Long.getLong(PREFIX + "maxHeapGrowthMB", 256);
+    private static final int MAX_CLASS_GROWTH = Integer.getInteger(PREFIX + "maxClassGrowth", 5000);
+    private static final int MAX_RETAINED_MANAGERS = Integer.getInteger(PREFIX + "maxRetainedManagers", 2);
+    /** How long the garbage collector is given to reclaim the managers of the finished builds. */
+    private static final long RETENTION_TIMEOUT_MILLIS = Long.getLong(PREFIX + "retentionTimeoutMillis", 10000);
+
+    private static final String SCRIPT = StringUtils.join(new String[]{
+            "from org.dcaro.hudson.plugins.jythonpostbuild import JythonPostbuildRecorderLoadTest",
+            "JythonPostbuildRecorderLoadTest.track(manager)",
+            "if manager.logContains('.*WARNING.*'):",
+            "    manager.addWarningBadge('warnings')",
+            "m = manager.getLogMatcher('Tests run: (\\\\d+), Failures: (\\\\d+)')",
+            "if m is not None:",
+            "    manager.addShortText(m.group(1))",
+            "    if int(m.group(2)) > 0:",
+            "        manager.buildUnstable()",
+            "summary = manager.createSummary('info.gif')",
+            "for i in range(100):",
+            "    summary.appendText('line %d<br/>' % i, False)"
+    }, '\n');
+
+    /** End of the build steps of each build, keyed by build. */
+    private static final Map<String, Long> BUILDERS_END = new ConcurrentHashMap<String, Long>();
+    private static final List<WeakReference<Object>> MANAGERS = new CopyOnWriteArrayList<WeakReference<Object>>();
+
+    @Rule
+    public JenkinsRule j = new JenkinsRule();
+
+    /** Called by the script, to check that interpreters are not retained once the build is over. */
+    public static void track(Object manager) {
+        MANAGERS.add(new WeakReference<Object>(manager));
+    }
+
+    @Before
+    public void setUp() {
+        Assume.assumeTrue(Boolean.getBoolean(PREFIX.substring(0, PREFIX.length() - 1)));
+        BUILDERS_END.clear();
+        MANAGERS.clear();
+    }
+
+    private static class LogWriter extends TestBuilder {
+        @Override
+        public boolean perform(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener) throws InterruptedException, IOException {
+            PrintStream logger = listener.getLogger();
+            for (int i = 0; i < LOG_LINES; i++) {
+                logger.println("[INFO] Compiling source file " + i + " of module " + build.getParent().getName());
+                if (i == LOG_LINES / 2) {
+                    logger.println("[WARNING] uses or overrides a deprecated API");
+                }
+            }
+            logger.println("Tests run: " + LOG_LINES + ", Failures: " + (build.getNumber() % 2));
+            BUILDERS_END.put(key(build), System.currentTimeMillis());
+            return true;
+        }
+    }
+
+    private JythonPostbuildRecorder createRecorder(int index) {
+        if (index % 2 == 0) {
+            return new JythonPostbuildRecorder(SCRIPT, 2, true);
+        }
+        JythonPostbuildRecorder recorder = new JythonPostbuildRecorder(SCRIPT, 2, true, Arrays.asList(
+                new JythonPostbuildRule(".*WARNING.*", JythonPostbuildRule.BADGE, "warning.gif", "warnings", null),
+                new JythonPostbuildRule("Tests run: (\\d+), Failures: [1-9]\\d*", JythonPostbuildRule.RESULT, null, null, "UNSTABLE")
+        ));
+        recorder.setScanLogDuringBuild(true);
+        recorder.setLivePatterns("Tests run: (\\d+), Failures: (\\d+)");
+        return recorder;
+    }
+
+    @Test
+    public void testConcurrentBuilds() throws Exception {
+        List<AbstractProject<?, ?>> projects = new ArrayList<AbstractProject<?, ?>>();
+        for (int i = 0; i < FREESTYLE_PROJECTS; i++) {
+            FreeStyleProject p = j.createFreeStyleProject("freestyle" + i);
+            p.getBuildersList().add(new LogWriter());
+            p.getPublishersList().add(createRecorder(i));
+            projects.add(p);
+        }
+        for (int i = 0; i < MATRIX_PROJECTS; i++) {
+            MatrixProject p = j.createMatrixProject("matrix" + i);
+            p.setAxes(new AxisList(new TextAxis("axis1", "a", "b"), new TextAxis("axis2", "c", "d")));
+            p.getBuildersList().add(new LogWriter());
+            p.getPublishersList().add(createRecorder(i));
+            projects.add(p);
+        }
+        j.jenkins.setNumExecutors(FREESTYLE_PROJECTS + MATRIX_PROJECTS * 5);
+
+        // warm up, so that the one time initialization of Jython is not measured
+        j.assertBuildStatusSuccess(((FreeStyleProject) projects.get(0)).scheduleBuild2(0).get());
+        long heapBefore = usedHeap();
+        int classesBefore = ManagementFactory.getClassLoadingMXBean().getLoadedClassCount();
+
+        List<AbstractBuild<?, ?>> builds = new ArrayList<AbstractBuild<?, ?>>();
+        long start = System.currentTimeMillis();
+        for (int round = 0; round < ROUNDS; round++) {
+            List<Future<? extends AbstractBuild<?, ?>>> futures = new ArrayList<Future<? extends AbstractBuild<?, ?>>>();
+            for (AbstractProject<?, ?> p : projects) {
+                futures.add(p.scheduleBuild2(0));
+            }
+            for (Future<? extends AbstractBuild<?, ?>> future : futures) {
+                AbstractBuild<?, ?> build = future.get(30, TimeUnit.MINUTES);
+                builds.add(build);
+                if (build instanceof MatrixBuild) {
+                    builds.addAll(((MatrixBuild) build).getExactRuns());
+                }
+            }
+        }
+        long elapsed = System.currentTimeMillis() - start;
+
+        List<Long> latencies = new ArrayList<Long>();
+        for (AbstractBuild<?, ?> build : builds) {
+            Long buildersEnd = BUILDERS_END.get(key(build));
+            if (buildersEnd != null) {
+                latencies.add(build.getStartTimeInMillis() + build.getDuration() - buildersEnd);
+            }
+            if (!(build instanceof MatrixBuild)) {
+                assertNotNull("No badge for " + build, build.getAction(JythonPostbuildAction.class));
+            }
+        }
+        Collections.sort(latencies);
+        builds.clear();
+
+        long heapGrowth = (usedHeap() - heapBefore) / (1024 * 1024);
+        int classGrowth = ManagementFactory.getClassLoadingMXBean().getLoadedClassCount() - classesBefore;
+        int retained = retainedManagers();
+        double throughput = latencies.size() * 1000.0 / elapsed;
+
+        LOGGER.info("Jython Postbuild load test: " + latencies.size() + " builds in " + elapsed + " ms ("
+                + String.format("%.2f", throughput) + " builds/s)\n"
+                + "  post-build latency p50=" + percentile(latencies, 50) + " ms, p95=" + percentile(latencies, 95)
+                + " ms, p99=" + percentile(latencies, 99) + " ms, max=" + percentile(latencies, 100) + " ms\n"
+                + "  heap growth=" + heapGrowth + " MB, loaded classes growth=" + classGrowth
+                + ", retained managers=" + retained + "/" + MANAGERS.size());
+
+        assertTrue("p95 post-build latency too high", percentile(latencies, 95) <= MAX_P95_MILLIS);
+        assertTrue("Throughput too low", throughput >= MIN_BUILDS_PER_SECOND);
+        assertTrue("Heap growth too high", heapGrowth <= MAX_HEAP_GROWTH_MB);
+        assertTrue("Too many classes loaded", classGrowth <= MAX_CLASS_GROWTH);
+        assertTrue("Interpreters retained after the builds", retained <= MAX_RETAINED_MANAGERS);
+    }
+
+    /**
+     * Collects the garbage until at most {@link #MAX_RETAINED_MANAGERS} managers are still
+     * referenced, as a single collection doesn't always clear every weak reference.
+     *
+     * @return the number of managers still referenced
+     */
+    private static int retainedManagers() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + RETENTION_TIMEOUT_MILLIS;
+        while (true) {
+            int retained = 0;
+            for (WeakReference<Object> manager : MANAGERS) {
+                if (manager.get() != null) {
+                    retained++;
+                }
+            }
+            if (retained <= MAX_RETAINED_MANAGERS || System.currentTimeMillis() >= deadline) {
+                return retained;
+            }
+            System.gc();
+            Thread.sleep(100);
+        }
+    }
+
+    private static String key(AbstractBuild<?, ?> build) {
+        return build.getParent().getFullName() + "#" + build.getNumber();
+    }
+
+    private static long percentile(List<Long> sorted, int percentile) {
+        if (sorted.isEmpty()) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percentile / 100.0 * sorted.size()) - 1;
+        return sorted.get(Math.max(0, Math.min(index, sorted.size() - 1)));
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
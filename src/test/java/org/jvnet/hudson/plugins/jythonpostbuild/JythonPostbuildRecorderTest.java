@@ -26,16 +26,27 @@ package org.dcaro.hudson.plugins.jythonpostbuild;
 
 import static org.junit.Assert.*;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
 
+import hudson.Launcher;
 import hudson.matrix.AxisList;
 import hudson.matrix.Combination;
 import hudson.matrix.MatrixBuild;
 import hudson.matrix.MatrixProject;
+import hudson.matrix.MatrixRun;
 import hudson.matrix.TextAxis;
 import hudson.model.FreeStyleBuild;
+import hudson.model.AbstractBuild;
+import hudson.model.BuildListener;
 import hudson.model.FreeStyleProject;
+import hudson.model.Result;
+import hudson.model.Run;
 
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang.StringUtils;
 import org.jenkinsci.plugins.scriptsecurity.sandbox.jython.SecureJythonScript;
 import org.jenkinsci.plugins.scriptsecurity.scripts.ClasspathEntry;
@@ -43,6 +54,7 @@ import org.jenkinsci.plugins.scriptsecurity.scripts.ScriptApproval;
 import org.jenkinsci.plugins.scriptsecurity.scripts.languages.JythonLanguage;
 import org.junit.Rule;
 import org.junit.Test;
+import org.jvnet.hudson.test.TestBuilder;
 import org.dcaro.hudson.test.JenkinsRule;
 import org.dcaro.hudson.test.recipes.WithPlugin;
 
@@ -65,6 +77,10 @@ public class JythonPostbuildRecorderTest {
             "}"
     }, '\n');
 
+    private static List<JythonPostbuildAction> badges(Run<?, ?> run) {
+        return run.getActions(JythonPostbuildAction.class);
+    }
+
     @Test
     public void testMatrixProjectWithParent() throws Exception {
         MatrixProject p = j.createMatrixProject();
@@ -94,6 +110,53 @@ public class JythonPostbuildRecorderTest {
         assertEquals("value1", b.getRun(new Combination(axisList, "value1")).getAction(JythonPostbuildAction.class).getText());
         assertEquals("value2", b.getRun(new Combination(axisList, "value2")).getAction(JythonPostbuildAction.class).getText());
     }
+
+    @Test
+    public void testMatrixChildResults() throws Exception {
+        MatrixProject p = j.createMatrixProject();
+        AxisList axisList = new AxisList(new TextAxis("axis1", "value1", "value2"));
+        p.setAxes(axisList);
+        p.getPublishersList().add(new JythonPostbuildRecorder(StringUtils.join(new String[]{
+                "from hudson.matrix import MatrixBuild",
+                "if manager.buildIsA(MatrixBuild):",
+                "  for combination in sorted(manager.getChildResults().keySet()):",
+                "    manager.addShortText(combination + ':' + manager.getChildResult(combination, 'tests'))",
+                "else:",
+                "  manager.publish('tests', manager.getEnvVariable('axis1').upper())"
+        }, '\n'), 2, true));
+
+        MatrixBuild b = p.scheduleBuild2(0).get();
+        j.assertBuildStatusSuccess(b);
+
+        assertEquals(2, badges(b).size());
+        assertEquals("axis1=value1:VALUE1", badges(b).get(0).getText());
+        assertEquals("axis1=value2:VALUE2", badges(b).get(1).getText());
+        // still available after the parent build is over
+        assertEquals("VALUE2", JythonPostbuildMatrixResults.getResults(b).get("axis1=value2").get("tests"));
+    }
+
+    @Test
+    public void testMatrixChildResultsWithoutValue() throws Exception {
+        MatrixProject p = j.createMatrixProject();
+        p.setAxes(new AxisList(new TextAxis("axis1", "value1", "value2")));
+        p.getPublishersList().add(new JythonPostbuildRecorder(StringUtils.join(new String[]{
+                "from hudson.matrix import MatrixBuild",
+                "if manager.buildIsA(MatrixBuild):",
+                "  manager.addShortText('children: %d' % manager.getChildResults().size())",
+                "else:",
+                "  manager.publish('tests', None)",
+                "  manager.addShortText('published')"
+        }, '\n'), 2, true));
+
+        MatrixBuild b = p.scheduleBuild2(0).get();
+        j.assertBuildStatusSuccess(b);
+
+        assertEquals("children: 0", badges(b).get(0).getText());
+        for (MatrixRun run : b.getExactRuns()) {
+            assertEquals("published", badges(run).get(0).getText());
+            j.assertLogContains("can't publish 'tests' with a null key or value", run);
+        }
+    }
     
     @Test
     @WithPlugin("dependee.hpi") // provides org.jenkinsci.plugins.dependencytest.dependee.Dependee.getValue() which returns "dependee".
@@ -121,4 +184,151 @@ public class JythonPostbuildRecorderTest {
         j.assertBuildStatusSuccess(b);
         assertEquals("dependee", b.getAction(JythonPostbuildAction.class).getText());
     }
+
+    @Test
+    public void testRulesWithoutScript() throws Exception {
+        FreeStyleProject p = j.createFreeStyleProject();
+        p.getBuildersList().add(new TestBuilder() {
+            @Override
+            public boolean perform(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener) throws InterruptedException, IOException {
+                listener.getLogger().println("Compiling module foo");
+                listener.getLogger().println("WARNING: deprecated API used 3 times");
+                return true;
+            }
+        });
+        p.getPublishersList().add(new JythonPostbuildRecorder("", 2, false, Arrays.asList(
+                new JythonPostbuildRule("WARNING: deprecated API used (\\d+) times", JythonPostbuildRule.SHORT_TEXT, null, "deprecated x$1", null),
+                new JythonPostbuildRule(".*deprecated.*", JythonPostbuildRule.RESULT, null, null, "UNSTABLE"),
+                new JythonPostbuildRule("never printed", JythonPostbuildRule.SHORT_TEXT, null, "unexpected", null)
+        )));
+
+        FreeStyleBuild b = p.scheduleBuild2(0).get();
+        j.assertBuildStatus(Result.UNSTABLE, b);
+        assertEquals(1, badges(b).size());
+        assertEquals("deprecated x3", badges(b).get(0).getText());
+    }
+
+    @Test
+    public void testScanLogDuringBuild() throws Exception {
+        FreeStyleProject p = j.createFreeStyleProject();
+        p.getBuildersList().add(new TestBuilder() {
+            @Override
+            public boolean perform(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener) throws InterruptedException, IOException {
+                listener.getLogger().println("Tests run: 12, Failures: 1");
+                return true;
+            }
+        });
+        JythonPostbuildRecorder recorder = new JythonPostbuildRecorder(
+                "if manager.logContains('Tests run: .*'):\n    manager.addShortText(manager.getLogMatcher('Tests run: (\\\\d+).*').group(1))",
+                2, false, Arrays.asList(
+                        new JythonPostbuildRule("Tests run: .*, Failures: [1-9].*", JythonPostbuildRule.BADGE, "warning.gif", "failures", null)
+                ));
+        recorder.setScanLogDuringBuild(true);
+        recorder.setLivePatterns("Tests run: (\\d+).*");
+        p.getPublishersList().add(recorder);
+
+        FreeStyleBuild b = p.scheduleBuild2(0).get();
+        j.assertBuildStatusSuccess(b);
+        JythonPostbuildLogMatches matches = b.getAction(JythonPostbuildLogMatches.class);
+        assertNotNull(matches);
+        assertTrue(matches.isMatched("Tests run: (\\d+).*"));
+        assertTrue(matches.isRuleApplied(recorder.getRules().get(0)));
+        assertEquals(2, badges(b).size());
+        assertEquals("failures", badges(b).get(0).getText());
+        assertEquals("12", badges(b).get(1).getText());
+        // the matching lines are only kept in memory
+        assertFalse(FileUtils.readFileToString(new File(b.getRootDir(), "build.xml")).contains("Failures: 1"));
+    }
+
+    @Test
+    public void testBadgesAreBuildActions() throws Exception {
+        FreeStyleProject p = j.createFreeStyleProject();
+        p.getPublishersList().add(new JythonPostbuildRecorder(StringUtils.join(new String[]{
+                "manager.addShortText('first')",
+                "manager.addShortText('second')",
+                "manager.addShortText('third')",
+                "manager.createSummary('info.gif').appendText('summary', True)",
+                "manager.removeBadge(1)"
+        }, '\n'), 2, false));
+        FreeStyleBuild b = j.assertBuildStatusSuccess(p.scheduleBuild2(0));
+
+        // the lookups used by views and other plugins
+        assertEquals("first", b.getAction(JythonPostbuildAction.class).getText());
+        assertEquals(2, b.getActions(JythonPostbuildAction.class).size());
+        assertEquals("third", b.getActions(JythonPostbuildAction.class).get(1).getText());
+        assertEquals("summary", b.getAction(JythonPostbuildSummaryAction.class).getText());
+
+        // badges added by other code are indexed too
+        b.addAction(JythonPostbuildAction.createShortText("added"));
+        JythonPostbuildBadgeIndex index = JythonPostbuildBadgeIndex.get(b);
+        assertEquals(3, index.getBadges().size());
+        assertEquals("added", index.getBadges().get(2).getText());
+        assertTrue(index.removeBadge(0));
+        assertEquals("third", b.getAction(JythonPostbuildAction.class).getText());
+        index.removeSummaries();
+        assertNull(b.getAction(JythonPostbuildSummaryAction.class));
+    }
+
+    @Test
+    public void testRunInWorker() throws Exception {
+        FreeStyleBuild b = buildInWorker(
+                "manager.addShortText('worker')",
+                "manager.addInfoBadge('info')",
+                "first = manager.createSummary('info.gif')",
+                "second = manager.createSummary('warning.gif')",
+                "second.appendText('second', True)",
+                "first.appendText('first', True)",
+                "manager.buildUnstable()");
+        j.assertBuildStatus(Result.UNSTABLE, b);
+
+        assertEquals(2, badges(b).size());
+        assertEquals("worker", badges(b).get(0).getText());
+        assertEquals("info", badges(b).get(1).getText());
+        List<JythonPostbuildSummaryAction> summaries = b.getActions(JythonPostbuildSummaryAction.class);
+        assertEquals(2, summaries.size());
+        assertTrue(summaries.get(0).getIconPath().endsWith("info.gif"));
+        assertEquals("first", summaries.get(0).getText());
+        assertEquals("second", summaries.get(1).getText());
+    }
+
+    @Test
+    public void testFailingScriptInWorker() throws Exception {
+        FreeStyleBuild b = buildInWorker("raise Exception('boom')");
+        j.assertBuildStatus(Result.FAILURE, b);
+
+        assertEquals("Jython", badges(b).get(0).getText());
+        assertTrue(b.getActions(JythonPostbuildSummaryAction.class).get(0).getText().contains("boom"));
+    }
+
+    @Test
+    public void testUnsupportedNamesInWorker() throws Exception {
+        FreeStyleBuild b = buildInWorker("manager.addShortText('x')", "print manager.build.number");
+        j.assertBuildStatus(Result.FAILURE, b);
+        // rejected before being run
+        assertEquals(1, badges(b).size());
+        assertEquals("Jython", badges(b).get(0).getText());
+        assertTrue(b.getActions(JythonPostbuildSummaryAction.class).get(0).getText().contains("manager.build is not available"));
+        j.assertLogContains("manager.build is not available", b);
+
+        b = buildInWorker("self.getScript()");
+        j.assertBuildStatus(Result.FAILURE, b);
+        assertTrue(b.getActions(JythonPostbuildSummaryAction.class).get(0).getText().contains("self (the recorder) is not available"));
+    }
+
+    @Test
+    public void testScriptTimeoutInWorker() throws Exception {
+        j.jenkins.getDescriptorByType(JythonPostbuildDescriptor.class).setWorkerTimeoutSeconds(2);
+        FreeStyleBuild b = buildInWorker("manager.addShortText('before')", "while True:", "  pass");
+        j.assertBuildStatus(Result.FAILURE, b);
+        assertTrue(b.getActions(JythonPostbuildSummaryAction.class).get(0).getText().contains("didn't complete within 2 seconds"));
+        // the calls sent before the timeout are replayed
+        assertEquals("before", badges(b).get(0).getText());
+        assertEquals("Jython", badges(b).get(1).getText());
+
+        // the stuck worker was replaced
+        j.jenkins.getDescriptorByType(JythonPostbuildDescriptor.class).setWorkerTimeoutSeconds(600);
+        b = buildInWorker("manager.addShortText('after')");
+        j.assertBuildStatusSuccess(b);
+        assertEquals("after", badges(b).get(0).getText());
+    }
 }
@@ -0,0 +1,169 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2014 David Caro
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.dcaro.hudson.plugins.jythonpostbuild;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class JythonPostbuildSchedulerTest {
+    private final JythonPostbuildScheduler scheduler = new JythonPostbuildScheduler(JythonPostbuildScheduler.AGING_MILLIS);
+    private final List<String> admitted = new CopyOnWriteArrayList<String>();
+
+    /**
+     * Starts a recorder that records its name once admitted and runs until released.
+     */
+    private Thread start(final JythonPostbuildScheduler scheduler, final String name, final String job, final int priority, final CountDownLatch done) throws Exception {
+        int queued = scheduler.getQueued();
+        Thread thread = new Thread(name) {
+            @Override
+            public void run() {
+                try {
+                    scheduler.acquire(job, priority, 1);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                admitted.add(name);
+                scheduler.release();
+                done.countDown();
+            }
+        };
+        thread.start();
+        // wait until it is queued, so that the arrival order is known
+        long deadline = System.currentTimeMillis() + 10000;
+        while (scheduler.getQueued() <= queued) {
+            assertTrue("not queued: " + name, System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+        return thread;
+    }
+
+    @Test
+    public void testLimit() throws Exception {
+        scheduler.acquire("a", JythonPostbuildScheduler.NORMAL, 2);
+        scheduler.acquire("b", JythonPostbuildScheduler.NORMAL, 2);
+        assertEquals(2, scheduler.getRunning());
+
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    scheduler.acquire("c", JythonPostbuildScheduler.NORMAL, 2);
+                    admitted.add("c");
+                } catch (InterruptedException e) {
+                    // failed below
+                }
+            }
+        };
+        thread.start();
+        Thread.sleep(200);
+        assertTrue(admitted.isEmpty());
+        assertEquals(1, scheduler.getQueued());
+
+        scheduler.release();
+        thread.join(10000);
+        assertEquals(Arrays.asList("c"), admitted);
+        assertEquals(2, scheduler.getRunning());
+        assertEquals(0, scheduler.getQueued());
+        assertEquals(3, scheduler.getAdmitted());
+    }
+
+    @Test
+    public void testNoLimit() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            scheduler.acquire("a", JythonPostbuildScheduler.LOW, 0);
+        }
+        assertEquals(10, scheduler.getRunning());
+    }
+
+    @Test
+    public void testPriorityOrder() throws Exception {
+        scheduler.acquire("holder", JythonPostbuildScheduler.NORMAL, 1);
+        CountDownLatch done = new CountDownLatch(4);
+        start(scheduler, "low", "a", JythonPostbuildScheduler.LOW, done);
+        start(scheduler, "normal", "b", JythonPostbuildScheduler.NORMAL, done);
+        start(scheduler, "high1", "c", JythonPostbuildScheduler.HIGH, done);
+        start(scheduler, "high2", "d", JythonPostbuildScheduler.HIGH, done);
+
+        scheduler.release();
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("high1", "high2", "normal", "low"), admitted);
+    }
+
+    @Test
+    public void testRoundRobinAcrossJobs() throws Exception {
+        scheduler.acquire("holder", JythonPostbuildScheduler.NORMAL, 1);
+        CountDownLatch done = new CountDownLatch(5);
+        start(scheduler, "train1", "train", JythonPostbuildScheduler.NORMAL, done);
+        start(scheduler, "train2", "train", JythonPostbuildScheduler.NORMAL, done);
+        start(scheduler, "train3", "train", JythonPostbuildScheduler.NORMAL, done);
+        start(scheduler, "other1", "other", JythonPostbuildScheduler.NORMAL, done);
+        start(scheduler, "other2", "other", JythonPostbuildScheduler.NORMAL, done);
+
+        scheduler.release();
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("train1", "other1", "train2", "other2", "train3"), admitted);
+    }
+
+    @Test
+    public void testAging() throws Exception {
+        JythonPostbuildScheduler scheduler = new JythonPostbuildScheduler(100);
+        scheduler.acquire("holder", JythonPostbuildScheduler.NORMAL, 1);
+        CountDownLatch done = new CountDownLatch(2);
+        start(scheduler, "old", "a", JythonPostbuildScheduler.LOW, done);
+        // promoted from LOW to HIGH after two aging periods
+        Thread.sleep(300);
+        start(scheduler, "new", "b", JythonPostbuildScheduler.HIGH, done);
+
+        scheduler.release();
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("old", "new"), admitted);
+    }
+
+    @Test
+    public void testInterruptedWaiter() throws Exception {
+        scheduler.acquire("holder", JythonPostbuildScheduler.NORMAL, 1);
+        CountDownLatch done = new CountDownLatch(1);
+        Thread waiter = start(scheduler, "interrupted", "a", JythonPostbuildScheduler.HIGH, done);
+        waiter.interrupt();
+        waiter.join(10000);
+        assertFalse(waiter.isAlive());
+        assertEquals(0, scheduler.getQueued());
+        assertEquals(1, scheduler.getRunning());
+
+        // the interrupted recorder neither got nor released a slot
+        scheduler.release();
+        assertEquals(0, scheduler.getRunning());
+        scheduler.acquire("b", JythonPostbuildScheduler.NORMAL, 1);
+        assertEquals(1, scheduler.getRunning());
+        assertTrue(admitted.isEmpty());
+        assertEquals(2, scheduler.getAdmitted());
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2014 David Caro
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.dcaro.hudson.plugins.jythonpostbuild;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.commons.lang.StringUtils;
+import org.junit.Test;
+import org.python.util.PythonInterpreter;
+
+public class JythonScriptProfilerTest {
+    private static final String ROW = "<tr><td class=\"pane\">";
+
+    /**
+     * @return the first cell of each row of the first table of the report
+     */
+    private static String[] firstCells(String report) {
+        String table = report.substring(0, report.indexOf("</table>"));
+        return StringUtils.substringsBetween(table, ROW, "</td>");
+    }
+
+    @Test
+    public void testHotLoop() throws Exception {
+        String script = StringUtils.join(new String[]{
+                "x = 0",
+                "while not done.get(): x += 1",
+                "print x > 0"
+        }, '\n');
+        final AtomicBoolean done = new AtomicBoolean();
+        PythonInterpreter interp = new PythonInterpreter();
+        interp.set("done", done);
+        final JythonScriptProfiler profiler = new JythonScriptProfiler();
+        // loops until the profiler got a few samples, whatever the speed of the machine
+        Thread stopper = new Thread() {
+            @Override
+            public void run() {
+                long deadline = System.currentTimeMillis() + 30000;
+                try {
+                    while (profiler.getSamples() < 5 && System.currentTimeMillis() < deadline) {
+                        Thread.sleep(JythonScriptProfiler.INTERVAL_MILLIS);
+                    }
+                } catch (InterruptedException e) {
+                    // stop the loop
+                } finally {
+                    done.set(true);
+                }
+            }
+        };
+        profiler.start();
+        stopper.start();
+        try {
+            interp.exec(script);
+        } finally {
+            profiler.stop();
+            stopper.join();
+        }
+        assertTrue("No sample within 30 seconds", profiler.getSamples() >= 5);
+        JythonPostbuildSummaryAction summary = new JythonPostbuildSummaryAction("clock.gif");
+        profiler.appendReport(summary, script, 10);
+
+        String report = summary.getText();
+        assertTrue(report, report.contains("<table"));
+        assertEquals(report, "2", firstCells(report)[0]);
+        assertTrue(report, report.contains("<code>while not done.get(): x += 1</code>"));
+    }
+
+    @Test
+    public void testReport() throws Exception {
+        JythonScriptProfiler profiler = new JythonScriptProfiler();
+        for (int i = 0; i < 6; i++) {
+            profiler.record(3, "parse", (i % 2 == 0) ? "getLogMatcher" : null);
+        }
+        for (int i = 0; i < 3; i++) {
+            profiler.record(1, "<module>", null);
+        }
+        profiler.record(2, "parse", "");
+        JythonPostbuildSummaryAction summary = new JythonPostbuildSummaryAction("clock.gif");
+        profiler.appendReport(summary, "x = 1\nif x < 2:\n  y = x\n", 2);
+
+        String report = summary.getText();
+        assertTrue(report, report.contains("10 samples, one every 10 ms (4 of the Java stack, one every 100 ms)"));
+        String[] tables = StringUtils.substringsBetween(report, "<table", "</table>");
+        assertEquals(3, tables.length);
+
+        // top 2 lines, hottest first, with their source
+        assertEquals(2, StringUtils.countMatches(tables[0], ROW));
+        assertTrue(tables[0], tables[0].contains(ROW + "3</td><td class=\"pane\">parse</td><td class=\"pane\">60</td><td class=\"pane\">60</td><td class=\"pane\"><code>y = x</code>"));
+        assertTrue(tables[0], tables[0].indexOf(ROW + "3<") < tables[0].indexOf(ROW + "1<"));
+        assertFalse(tables[0], tables[0].contains(ROW + "2<"));
+
+        // functions, and escaped names
+        assertTrue(tables[1], tables[1].contains(ROW + "parse</td><td class=\"pane\">70</td><td class=\"pane\">70</td>"));
+        assertTrue(tables[1], tables[1].contains(ROW + "&lt;module&gt;</td><td class=\"pane\">30</td><td class=\"pane\">30</td>"));
+
+        // manager calls, over the samples of the Java stack
+        assertTrue(tables[2], tables[2].contains(ROW + "getLogMatcher</td><td class=\"pane\">300</td><td class=\"pane\">75</td>"));
+    }
+
+    @Test
+    public void testEmptyReport() throws Exception {
+        JythonPostbuildSummaryAction summary = new JythonPostbuildSummaryAction("clock.gif");
+        new JythonScriptProfiler().appendReport(summary, "pass", 10);
+        assertFalse(summary.getText().contains("<table"));
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2014 David Caro
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.dcaro.hudson.plugins.jythonpostbuild;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+
+import org.apache.commons.lang.StringUtils;
+import org.junit.Test;
+
+public class TestReportParserTest {
+    private static final String JUNIT_REPORT = StringUtils.join(new String[]{
+            "<?xml version=\"1.0\" encoding=\"UTF-8\"?>",
+            "<testsuite name=\"Suite\" tests=\"4\">",
+            "  <testcase classname=\"a.A\" name=\"fast\" time=\"0.010\"/>",
+            "  <testcase classname=\"a.A\" name=\"slow\" time=\"2.500\"/>",
+            "  <testcase classname=\"a.B\" name=\"broken\" time=\"1,000.0\">",
+            "    <failure message=\"expected 1\">stack trace</failure>",
+            "  </testcase>",
+            "  <testcase classname=\"a.B\" name=\"crashed\" time=\"0.5\">",
+            "    <error>java.lang.NullPointerException</error>",
+            "  </testcase>",
+            "  <testcase classname=\"a.B\" name=\"ignored\"><skipped/></testcase>",
+            "  <system-out>lots of output</system-out>",
+            "</testsuite>"
+    }, '\n');
+
+    private static final String TESTNG_REPORT = StringUtils.join(new String[]{
+            "<?xml version=\"1.0\" encoding=\"UTF-8\"?>",
+            "<testng-results><suite><test><class name=\"b.C\">",
+            "  <test-method status=\"PASS\" name=\"setUp\" is-config=\"true\" duration-ms=\"5\"/>",
+            "  <test-method status=\"PASS\" name=\"ok\" duration-ms=\"1500\"/>",
+            "  <test-method status=\"FAIL\" name=\"ko\" duration-ms=\"20\">",
+            "    <exception class=\"java.lang.AssertionError\"><message><![CDATA[boom]]></message></exception>",
+            "  </test-method>",
+            "  <test-method status=\"SKIP\" name=\"later\" duration-ms=\"0\"/>",
+            "</class></test></suite></testng-results>"
+    }, '\n');
+
+    private static TestReportSummary parse(String report, int maxSlowest, int maxFailed) throws Exception {
+        TestReportSummary summary = new TestReportSummary(maxSlowest, maxFailed);
+        new TestReportParser().parse(new ByteArrayInputStream(report.getBytes("UTF-8")), summary);
+        return summary;
+    }
+
+    @Test
+    public void testJUnitReport() throws Exception {
+        TestReportSummary summary = parse(JUNIT_REPORT, 2, 10);
+        assertEquals(1, summary.getReports());
+        assertEquals(5, summary.getTests());
+        assertEquals(1, summary.getFailures());
+        assertEquals(1, summary.getErrors());
+        assertEquals(1, summary.getSkipped());
+        assertEquals(2, summary.getPassed());
+        assertFalse(summary.isSuccessful());
+
+        assertEquals(2, summary.getSlowest().size());
+        assertEquals("a.B.broken", summary.getSlowest().get(0).getFullName());
+        assertEquals("a.A.slow", summary.getSlowest().get(1).getFullName());
+
+        assertEquals(2, summary.getFailed().size());
+        assertEquals("expected 1", summary.getFailed().get(0).getMessage());
+        assertEquals(TestReportSummary.ERROR, summary.getFailed().get(1).getStatus());
+        assertEquals("java.lang.NullPointerException", summary.getFailed().get(1).getMessage());
+    }
+
+    @Test
+    public void testTestNGReport() throws Exception {
+        TestReportSummary summary = parse(TESTNG_REPORT, 10, 0);
+        assertEquals(3, summary.getTests());
+        assertEquals(1, summary.getFailures());
+        assertEquals(1, summary.getSkipped());
+        assertEquals(1.52, summary.getTime(), 0.0001);
+        assertEquals("b.C.ok", summary.getSlowest().get(0).getFullName());
+        assertTrue(summary.getFailed().isEmpty());
+    }
+}